@@ -0,0 +1,67 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.FiskalizacijaPortType;
+import hr.leadtheway.wsdl.FiskalizacijaService;
+import hr.leadtheway.wsdl.ObjectFactory;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.xml.bind.JAXBContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start of the client: every fork is a fresh JVM and measures the first call only.
+ * {@code wsdlService} is the generated service, which parses the WSDL and the schemas.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class ClientBootstrapBenchmark {
+
+    private static final String ENDPOINT = "https://cistest.apis-it.hr:8449/FiskalizacijaServiceTest";
+
+    private SigningKeys signingKeys;
+    private CisTransport transport;
+
+    @Setup
+    public void setUp() throws Exception {
+        signingKeys = TestFixtures.signingKeys();
+        transport = new CisTransport(new CisTransport.Settings(
+                Duration.ofSeconds(3), Duration.ofSeconds(10), 64, Duration.ofHours(12), false
+        ));
+    }
+
+    @Benchmark
+    public FiskalizacijaPortType wsdlService() {
+        return new FiskalizacijaService().getFiskalizacijaPortType();
+    }
+
+    @Benchmark
+    public FiskalizacijaPortType portFactory() {
+        var factory = new FiskalizacijaPortFactory(signingKeys, transport, ENDPOINT, ObservationRegistry.NOOP);
+        return factory.create();
+    }
+
+    @Benchmark
+    public JAXBContext jaxbContext() throws Exception {
+        return JAXBContext.newInstance(ObjectFactory.class);
+    }
+
+    @Benchmark
+    public byte[] firstMarshal() {
+        return FiskalizacijaJaxb.marshal(TestFixtures.racunZahtjev(1));
+    }
+}
@@ -0,0 +1,48 @@
+package hr.leadtheway.fiskalizacija;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The receipts of {@link PdfReceiptBenchmark} for a thermal printer, into a reused buffer.
+ * Run with {@code -prof gc} to see the allocation per receipt.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EscPosReceiptBenchmark {
+
+    @Param({"5", "500"})
+    private int items;
+
+    private EscPosReceiptRenderer renderer;
+    private EscPosReceiptRenderer.Buffer buffer;
+    private Receipt receipt;
+
+    @Setup
+    public void setUp() {
+        renderer = new EscPosReceiptRenderer(48);
+        buffer = new EscPosReceiptRenderer.Buffer();
+        receipt = TestFixtures.receipt(1234, items);
+    }
+
+    @Benchmark
+    public int render() {
+        renderer.render(receipt, buffer);
+        return buffer.size();
+    }
+}
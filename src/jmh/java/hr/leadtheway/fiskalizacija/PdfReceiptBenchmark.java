@@ -0,0 +1,53 @@
+package hr.leadtheway.fiskalizacija;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A till receipt with a few items and a long one that spans several pages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PdfReceiptBenchmark {
+
+    @Param({"5", "500"})
+    private int items;
+
+    private PdfReceiptGenerator generator;
+    private Receipt receipt;
+
+    @Setup
+    public void setUp() throws Exception {
+        generator = TestFixtures.pdfReceiptGenerator();
+        receipt = TestFixtures.receipt(1234, items);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        generator.close();
+    }
+
+    @Benchmark
+    public int generatePdf() throws Exception {
+        var out = new ByteArrayOutputStream(64 * 1024);
+        generator.generatePdf(receipt, out);
+        return out.size();
+    }
+}
@@ -0,0 +1,50 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.RacunZahtjev;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing a {@link RacunZahtjev}: JAXB with a new marshaller per call, as the client does,
+ * against {@link FiskalizacijaXmlWriter} reusing its buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RacunZahtjevMarshalBenchmark {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(4 * 1024);
+    private final FiskalizacijaXmlWriter writer = new FiskalizacijaXmlWriter();
+    private RacunZahtjev zahtjev;
+
+    @Setup
+    public void setUp() {
+        zahtjev = TestFixtures.racunZahtjev(1234);
+    }
+
+    @Benchmark
+    public int jaxb() throws Exception {
+        out.reset();
+        FiskalizacijaJaxb.CONTEXT.createMarshaller().marshal(zahtjev, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int writer() {
+        return writer.write(zahtjev).size();
+    }
+}
@@ -0,0 +1,144 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.RacunZahtjev;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.soap.MessageFactory;
+import jakarta.xml.soap.SOAPMessage;
+import jakarta.xml.ws.handler.MessageContext;
+import jakarta.xml.ws.handler.soap.SOAPMessageContext;
+import org.apache.xml.security.signature.XMLSignature;
+import org.apache.xml.security.transforms.Transforms;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Element;
+
+import javax.xml.namespace.QName;
+import java.security.KeyStore.PrivateKeyEntry;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static jakarta.xml.ws.handler.MessageContext.MESSAGE_OUTBOUND_PROPERTY;
+import static org.apache.xml.security.algorithms.MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA1;
+import static org.apache.xml.security.c14n.Canonicalizer.ALGO_ID_C14N_EXCL_OMIT_COMMENTS;
+import static org.apache.xml.security.signature.XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA1;
+import static org.apache.xml.security.transforms.Transforms.TRANSFORM_ENVELOPED_SIGNATURE;
+
+/**
+ * Signs a SOAP envelope carrying a {@link RacunZahtjev}. {@code legacy} is the handler as it was
+ * before the KeyInfo template, kept here as the baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XmlSignatureBenchmark {
+
+    private PrivateKeyEntry signingKey;
+    private XmlSignatureOutboundHandler handler;
+    private JAXBContext jaxbContext;
+    private MessageFactory messageFactory;
+    private RacunZahtjev zahtjev;
+
+    private SOAPMessage message;
+
+    @Setup
+    public void setUp() throws Exception {
+        signingKey = TestFixtures.signingKey();
+        handler = new XmlSignatureOutboundHandler(TestFixtures.signingKeys(), ObservationRegistry.NOOP);
+        jaxbContext = JAXBContext.newInstance(RacunZahtjev.class);
+        messageFactory = MessageFactory.newInstance();
+        zahtjev = TestFixtures.racunZahtjev(1234);
+    }
+
+    @Setup(Level.Invocation)
+    public void newMessage() throws Exception {
+        message = messageFactory.createMessage();
+        jaxbContext.createMarshaller().marshal(zahtjev, message.getSOAPBody());
+        message.saveChanges();
+    }
+
+    @Benchmark
+    public SOAPMessage handler() {
+        var ctx = new OutboundContext(message);
+        handler.handleMessage(ctx);
+        return ctx.getMessage();
+    }
+
+    @Benchmark
+    public SOAPMessage legacy() throws Exception {
+        var body = message.getSOAPBody();
+        var root = (Element) body.getFirstChild();
+        var doc = root.getOwnerDocument();
+
+        root.setIdAttribute("Id", true);
+
+        var sig = new XMLSignature(doc, "", ALGO_ID_SIGNATURE_RSA_SHA1, ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+        var transforms = new Transforms(doc);
+        transforms.addTransform(TRANSFORM_ENVELOPED_SIGNATURE);
+        transforms.addTransform(ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+        sig.addDocument("#" + root.getAttribute("Id"), transforms, ALGO_ID_DIGEST_SHA1);
+
+        var certificate = (X509Certificate) signingKey.getCertificate();
+        sig.addKeyInfo(certificate);
+        sig.addKeyInfo(certificate.getPublicKey());
+
+        root.appendChild(sig.getElement());
+        sig.sign(signingKey.getPrivateKey());
+
+        message.saveChanges();
+        return message;
+    }
+
+    static final class OutboundContext extends HashMap<String, Object> implements SOAPMessageContext {
+
+        private SOAPMessage message;
+
+        OutboundContext(SOAPMessage message) {
+            this.message = message;
+            put(MESSAGE_OUTBOUND_PROPERTY, Boolean.TRUE);
+        }
+
+        @Override
+        public SOAPMessage getMessage() {
+            return message;
+        }
+
+        @Override
+        public void setMessage(SOAPMessage message) {
+            this.message = message;
+        }
+
+        @Override
+        public Object[] getHeaders(QName header, JAXBContext context, boolean allRoles) {
+            return new Object[0];
+        }
+
+        @Override
+        public Set<String> getRoles() {
+            return Set.of();
+        }
+
+        @Override
+        public void setScope(String name, MessageContext.Scope scope) {
+        }
+
+        @Override
+        public MessageContext.Scope getScope(String name) {
+            return MessageContext.Scope.HANDLER;
+        }
+    }
+}
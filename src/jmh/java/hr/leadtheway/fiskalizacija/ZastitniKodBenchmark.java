@@ -0,0 +1,58 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.BrojRacunaType;
+import io.micrometer.observation.ObservationRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZastitniKodBenchmark {
+
+    private static final String OIB = "12345678901";
+    private static final LocalDateTime DATUM = LocalDateTime.of(2025, 6, 1, 12, 30, 15);
+    private static final String IZNOS = "1234.56";
+
+    private final ZastitniKodCalculator calculator = new ZastitniKodCalculator(ObservationRegistry.NOOP);
+    private BrojRacunaType brRac;
+    private PrivateKey privateKey;
+
+    @Setup
+    public void setUp() throws Exception {
+        var generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        privateKey = generator.generateKeyPair().getPrivate();
+        brRac = BrojRacunaType.builder()
+                .brOznRac("1234")
+                .oznPosPr("POS1")
+                .oznNapUr("1")
+                .build();
+    }
+
+    @Benchmark
+    public String staticUtils() {
+        return ZastitniKodIzracunUtils.calculate(OIB, DATUM, brRac, IZNOS, privateKey);
+    }
+
+    @Benchmark
+    public String calculator() {
+        return calculator.calculate(OIB, DATUM, brRac, IZNOS, privateKey);
+    }
+}
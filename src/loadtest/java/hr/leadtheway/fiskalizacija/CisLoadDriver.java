@@ -0,0 +1,161 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.FiskalizacijaPortType;
+import hr.leadtheway.wsdl.RacunZahtjev;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.xml.ws.Dispatch;
+
+import javax.xml.transform.Source;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Drives {@code racuni} requests against {@link MockCis} through the real client: ZKI, signing,
+ * SOAP over HTTP and reading the response. Prints throughput and latency percentiles.
+ * <p>
+ * Arguments are {@code key=value}, e.g.
+ * {@code requests=20000 warmup=2000 concurrency=32 path=streaming latency=20ms jitter=10ms error-rate=0.01}.
+ */
+public final class CisLoadDriver {
+
+    private static final LocalDateTime DATUM = LocalDateTime.of(2025, 6, 1, 12, 30, 15);
+
+    private CisLoadDriver() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        var options = parse(args);
+        var requests = Integer.parseInt(options.getOrDefault("requests", "20000"));
+        var warmup = Integer.parseInt(options.getOrDefault("warmup", "2000"));
+        var concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        var path = options.getOrDefault("path", "port");
+        var address = options.getOrDefault("address", "http://localhost:18449/FiskalizacijaServiceTest");
+
+        var cis = MockCis.start(address, new MockCis.Settings(
+                duration(options.getOrDefault("latency", "20ms")),
+                duration(options.getOrDefault("jitter", "0ms")),
+                Double.parseDouble(options.getOrDefault("error-rate", "0")),
+                Double.parseDouble(options.getOrDefault("fault-rate", "0"))
+        ));
+
+        try {
+            var signingKeys = TestFixtures.signingKeys();
+            var key = signingKeys.defaultKey();
+            var transport = new CisTransport(new CisTransport.Settings(
+                    Duration.ofSeconds(3), Duration.ofSeconds(30), 64, Duration.ofHours(12), false
+            ));
+            var portFactory = new FiskalizacijaPortFactory(signingKeys, transport, address, ObservationRegistry.NOOP);
+            var zkiCalculator = new ZastitniKodCalculator(ObservationRegistry.NOOP);
+
+            Function<RacunZahtjev, String> racuni = switch (path) {
+                case "port" -> {
+                    var pool = new PortPool<>(FiskalizacijaPortType.class, concurrency, Duration.ofSeconds(30), portFactory::create);
+                    var port = pool.asPort();
+                    yield zahtjev -> port.racuni(zahtjev).getJir();
+                }
+                case "streaming" -> {
+                    @SuppressWarnings("unchecked")
+                    var pool = new PortPool<>((Class<Dispatch<Source>>) (Class<?>) Dispatch.class, concurrency, Duration.ofSeconds(30), portFactory::createDispatch);
+                    var client = new StreamingFiskalizacijaClient(
+                            new StreamingXmlSigner(signingKeys), pool, new RacunOdgovorReader(null));
+                    yield zahtjev -> client.racuniJir(zahtjev).jir();
+                }
+                default -> throw new IllegalArgumentException("Unsupported path: " + path);
+            };
+
+            Function<Integer, String> send = i -> {
+                var zahtjev = TestFixtures.racunZahtjev(i);
+                var racun = zahtjev.getRacun();
+                zahtjev.getZaglavlje().setIdPoruke(UUID.randomUUID().toString());
+                racun.setZastKod(zkiCalculator.calculate(racun.getOib(), DATUM, racun.getBrRac(), racun.getIznosUkupno(), key.privateKey()));
+                return racuni.apply(zahtjev);
+            };
+
+            System.out.printf("path=%s concurrency=%d warmup=%d requests=%d%n", path, concurrency, warmup, requests);
+            run(send, warmup, concurrency);
+            var result = run(send, requests, concurrency);
+            result.print();
+            System.out.println(cis.stats());
+            System.out.println(transport.stats());
+        } finally {
+            cis.stop();
+        }
+    }
+
+    private static Result run(Function<Integer, String> send, int requests, int concurrency) throws InterruptedException {
+        var latencies = new long[requests];
+        var next = new AtomicInteger();
+        var failures = new LongAdder();
+        var withoutJir = new LongAdder();
+
+        var start = System.nanoTime();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (var worker = 0; worker < concurrency; worker++) {
+                executor.execute(() -> {
+                    int i;
+                    while ((i = next.getAndIncrement()) < requests) {
+                        var sent = System.nanoTime();
+                        try {
+                            if (send.apply(i) == null) {
+                                withoutJir.increment();
+                            }
+                        } catch (RuntimeException ex) {
+                            failures.increment();
+                        }
+                        latencies[i] = System.nanoTime() - sent;
+                    }
+                });
+            }
+        }
+        var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        Arrays.sort(latencies);
+        return new Result(requests, elapsed, latencies, failures.sum(), withoutJir.sum());
+    }
+
+    private record Result(int requests, Duration elapsed, long[] sortedLatencies, long failures, long withoutJir) {
+
+        void print() {
+            var seconds = elapsed.toNanos() / 1e9;
+            System.out.printf("throughput  %.1f req/s (%d in %.2f s)%n", requests / seconds, requests, seconds);
+            System.out.printf("latency     p50 %s  p90 %s  p99 %s  p99.9 %s  max %s%n",
+                    millis(0.50), millis(0.90), millis(0.99), millis(0.999), millis(1.0));
+            System.out.printf("failures    %d, without JIR %d%n", failures, withoutJir);
+        }
+
+        private String millis(double percentile) {
+            var index = (int) Math.min(sortedLatencies.length - 1, Math.ceil(percentile * sortedLatencies.length) - 1);
+            return String.format("%.2f ms", sortedLatencies[Math.max(index, 0)] / 1e6);
+        }
+    }
+
+    private static Duration duration(String value) {
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if (value.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        return Duration.parse(value);
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        var options = new HashMap<String, String>();
+        for (var arg : args) {
+            var eq = arg.indexOf('=');
+            if (eq < 1) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+}
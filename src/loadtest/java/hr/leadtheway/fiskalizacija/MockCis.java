@@ -0,0 +1,292 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.FiskalizacijaPortType;
+import hr.leadtheway.wsdl.GreskaType;
+import hr.leadtheway.wsdl.GreskeType;
+import hr.leadtheway.wsdl.NapojnicaOdgovor;
+import hr.leadtheway.wsdl.NapojnicaZahtjev;
+import hr.leadtheway.wsdl.PorukaOdgovoraType;
+import hr.leadtheway.wsdl.PrateciDokumentiOdgovor;
+import hr.leadtheway.wsdl.PrateciDokumentiZahtjev;
+import hr.leadtheway.wsdl.PromijeniNacPlacOdgovor;
+import hr.leadtheway.wsdl.PromijeniNacPlacZahtjev;
+import hr.leadtheway.wsdl.ProvjeraOdgovor;
+import hr.leadtheway.wsdl.ProvjeraZahtjev;
+import hr.leadtheway.wsdl.RacunOdgovor;
+import hr.leadtheway.wsdl.RacunPDOdgovor;
+import hr.leadtheway.wsdl.RacunPDZahtjev;
+import hr.leadtheway.wsdl.RacunZahtjev;
+import hr.leadtheway.wsdl.ZaglavljeOdgovorType;
+import hr.leadtheway.wsdl.ZaglavljeType;
+import jakarta.annotation.Resource;
+import jakarta.jws.WebService;
+import jakarta.xml.ws.Endpoint;
+import jakarta.xml.ws.WebServiceContext;
+import jakarta.xml.ws.WebServiceException;
+import jakarta.xml.ws.handler.MessageContext;
+import jakarta.xml.ws.handler.soap.SOAPHandler;
+import jakarta.xml.ws.handler.soap.SOAPMessageContext;
+import org.apache.xml.security.Init;
+import org.apache.xml.security.signature.XMLSignature;
+import org.apache.xml.security.utils.Constants;
+import org.w3c.dom.Element;
+
+import javax.xml.namespace.QName;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import static jakarta.xml.ws.handler.MessageContext.MESSAGE_OUTBOUND_PROPERTY;
+
+/**
+ * Local stand-in for CIS, published over plain HTTP with {@link Endpoint}. It checks the
+ * request signature, answers with a random JIR, and can add latency, CIS errors ({@code Greske})
+ * and SOAP faults. Responses are not signed.
+ */
+@WebService(
+        endpointInterface = "hr.leadtheway.wsdl.FiskalizacijaPortType",
+        serviceName = "FiskalizacijaService",
+        portName = "FiskalizacijaPortType",
+        targetNamespace = "http://www.apis-it.hr/fin/2012/services/FiskalizacijaService"
+)
+public class MockCis implements FiskalizacijaPortType {
+
+    private static final DateTimeFormatter DATUM_VRIJEME_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy'T'HH:mm:ss");
+    private static final String SIGNATURE_VALID = "mockcis.signature.valid";
+
+    static {
+        Init.init();
+    }
+
+    @Resource
+    private WebServiceContext context;
+
+    private final Settings settings;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder invalidSignatures = new LongAdder();
+    private final LongAdder injectedErrors = new LongAdder();
+    private final LongAdder injectedFaults = new LongAdder();
+
+    private Endpoint endpoint;
+    private ExecutorService executor;
+
+    public MockCis(Settings settings) {
+        this.settings = settings;
+    }
+
+    public static MockCis start(String address, Settings settings) {
+        var cis = new MockCis(settings);
+        cis.executor = Executors.newVirtualThreadPerTaskExecutor();
+        cis.endpoint = Endpoint.create(cis);
+        cis.endpoint.getBinding().setHandlerChain(List.of(new SignatureCheck()));
+        // the default executor of the JDK HTTP server handles one exchange at a time
+        cis.endpoint.setExecutor(cis.executor);
+        cis.endpoint.publish(address);
+        return cis;
+    }
+
+    public void stop() {
+        endpoint.stop();
+        executor.shutdown();
+    }
+
+    public Stats stats() {
+        return new Stats(requests.sum(), invalidSignatures.sum(), injectedErrors.sum(), injectedFaults.sum());
+    }
+
+    /* ────────── operations ────────── */
+
+    @Override
+    public RacunOdgovor racuni(RacunZahtjev request) {
+        var greske = process();
+        return RacunOdgovor.builder()
+                .id(request.getId())
+                .zaglavlje(zaglavlje(request.getZaglavlje()))
+                .jir(greske == null ? UUID.randomUUID().toString() : null)
+                .greske(greske)
+                .build();
+    }
+
+    @Override
+    public PrateciDokumentiOdgovor prateciDokumenti(PrateciDokumentiZahtjev request) {
+        var greske = process();
+        return PrateciDokumentiOdgovor.builder()
+                .id(request.getId())
+                .zaglavlje(zaglavlje(request.getZaglavlje()))
+                .jir(greske == null ? UUID.randomUUID().toString() : null)
+                .greske(greske)
+                .build();
+    }
+
+    @Override
+    public RacunPDOdgovor racuniPD(RacunPDZahtjev request) {
+        var greske = process();
+        return RacunPDOdgovor.builder()
+                .id(request.getId())
+                .zaglavlje(zaglavlje(request.getZaglavlje()))
+                .jir(greske == null ? UUID.randomUUID().toString() : null)
+                .greske(greske)
+                .build();
+    }
+
+    @Override
+    public ProvjeraOdgovor provjera(ProvjeraZahtjev request) {
+        var greske = process();
+        return ProvjeraOdgovor.builder()
+                .id(request.getId())
+                .zaglavlje(zaglavlje(request.getZaglavlje()))
+                .racun(request.getRacun())
+                .racunPD(request.getRacunPD())
+                .greske(greske)
+                .build();
+    }
+
+    @Override
+    public PromijeniNacPlacOdgovor promijeniNacPlac(PromijeniNacPlacZahtjev request) {
+        var greske = process();
+        return PromijeniNacPlacOdgovor.builder()
+                .id(request.getId())
+                .zaglavlje(zaglavlje(request.getZaglavlje()))
+                .porukaOdgovora(greske == null ? uspjeh() : null)
+                .greske(greske)
+                .build();
+    }
+
+    @Override
+    public NapojnicaOdgovor napojnica(NapojnicaZahtjev request) {
+        var greske = process();
+        return NapojnicaOdgovor.builder()
+                .id(request.getId())
+                .zaglavlje(zaglavlje(request.getZaglavlje()))
+                .porukaOdgovora(greske == null ? uspjeh() : null)
+                .greske(greske)
+                .build();
+    }
+
+    @Override
+    public String echo(String request) {
+        return request;
+    }
+
+    /* ────────── behaviour ────────── */
+
+    /**
+     * Waits out the configured latency and returns the errors to answer with, or {@code null}.
+     */
+    private GreskeType process() {
+        requests.increment();
+        var random = ThreadLocalRandom.current();
+
+        var latency = settings.latency().toNanos();
+        if (!settings.jitter().isZero()) {
+            latency += random.nextLong(settings.jitter().toNanos());
+        }
+        if (latency > 0) {
+            try {
+                Thread.sleep(Duration.ofNanos(latency));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (!Boolean.TRUE.equals(context.getMessageContext().get(SIGNATURE_VALID))) {
+            invalidSignatures.increment();
+            return greska("s004", "Neispravan digitalni potpis.");
+        }
+        if (random.nextDouble() < settings.faultRate()) {
+            injectedFaults.increment();
+            throw new WebServiceException("Injected fault");
+        }
+        if (random.nextDouble() < settings.errorRate()) {
+            injectedErrors.increment();
+            return greska("s006", "Sistemska pogreška prilikom obrade zahtjeva.");
+        }
+        return null;
+    }
+
+    private static ZaglavljeOdgovorType zaglavlje(ZaglavljeType zahtjev) {
+        return ZaglavljeOdgovorType.builder()
+                .idPoruke(zahtjev == null ? null : zahtjev.getIdPoruke())
+                .datumVrijeme(LocalDateTime.now().format(DATUM_VRIJEME_FORMATTER))
+                .build();
+    }
+
+    private static GreskeType greska(String sifra, String poruka) {
+        return GreskeType.builder()
+                .greska(List.of(GreskaType.builder().sifraGreske(sifra).porukaGreske(poruka).build()))
+                .build();
+    }
+
+    private static PorukaOdgovoraType uspjeh() {
+        return PorukaOdgovoraType.builder().sifraPoruke("p001").poruka("Zahtjev uspješno obrađen.").build();
+    }
+
+    public record Settings(Duration latency, Duration jitter, double errorRate, double faultRate) {
+    }
+
+    public record Stats(long requests, long invalidSignatures, long injectedErrors, long injectedFaults) {
+    }
+
+    /**
+     * Verifies the enveloped signature of the request body against the certificate in its KeyInfo.
+     */
+    static final class SignatureCheck implements SOAPHandler<SOAPMessageContext> {
+
+        @Override
+        public boolean handleMessage(SOAPMessageContext ctx) {
+            if (Boolean.TRUE.equals(ctx.get(MESSAGE_OUTBOUND_PROPERTY))) {
+                return true;
+            }
+
+            ctx.put(SIGNATURE_VALID, verify(ctx));
+            ctx.setScope(SIGNATURE_VALID, MessageContext.Scope.APPLICATION);
+            return true;
+        }
+
+        private static boolean verify(SOAPMessageContext ctx) {
+            try {
+                Element root = null;
+                for (var node = ctx.getMessage().getSOAPBody().getFirstChild(); node != null && root == null; node = node.getNextSibling()) {
+                    if (node instanceof Element element) {
+                        root = element;
+                    }
+                }
+                if (root == null || !root.hasAttribute("Id")) {
+                    return false;
+                }
+                root.setIdAttribute("Id", true);
+
+                var signatures = root.getElementsByTagNameNS(Constants.SignatureSpecNS, Constants._TAG_SIGNATURE);
+                if (signatures.getLength() != 1) {
+                    return false;
+                }
+                var signature = new XMLSignature((Element) signatures.item(0), "");
+                var certificate = signature.getKeyInfo().getX509Certificate();
+                return certificate != null && signature.checkSignatureValue(certificate);
+            } catch (Exception ex) {
+                return false;
+            }
+        }
+
+        @Override
+        public boolean handleFault(SOAPMessageContext ctx) {
+            return true;
+        }
+
+        @Override
+        public void close(MessageContext ctx) {
+        }
+
+        @Override
+        public Set<QName> getHeaders() {
+            return Set.of();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package hr.leadtheway.fiskalizacija;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * A euro amount, or a tax rate in percent, in hundredths. Written the way CIS and the ZKI input
+ * expect it, with a dot and two decimals ({@code 1234.56}), and read back from that form or
+ * with fewer decimals; JSON carries it as that string.
+ */
+public record Amount(long cents) implements Comparable<Amount> {
+
+    public static final Amount ZERO = new Amount(0);
+
+    private static final int CENTS_PER_UNIT = 100;
+    // a rate in hundredths of a percent times an amount in cents
+    private static final long PERCENT_SCALE = 100L * CENTS_PER_UNIT;
+
+    public static Amount ofCents(long cents) {
+        return cents == 0 ? ZERO : new Amount(cents);
+    }
+
+    /**
+     * Reads {@code 1234.56}, {@code -0.5} or {@code 12}; more than two decimals would be rounded,
+     * so they are rejected.
+     */
+    @JsonCreator
+    public static Amount parse(String text) {
+        var length = text.length();
+        var negative = length > 0 && text.charAt(0) == '-';
+        var start = negative ? 1 : 0;
+
+        var units = 0L;
+        var i = start;
+        for (; i < length && text.charAt(i) != '.'; i++) {
+            units = Math.addExact(Math.multiplyExact(units, 10), digit(text, i));
+        }
+        if (i == start) {
+            throw new IllegalArgumentException("Not an amount: '" + text + "'");
+        }
+
+        var cents = 0;
+        if (i < length) {
+            var decimals = length - i - 1;
+            if (decimals < 1 || decimals > 2) {
+                throw new IllegalArgumentException("Not an amount with one or two decimals: '" + text + "'");
+            }
+            cents = digit(text, i + 1) * 10 + (decimals == 2 ? digit(text, i + 2) : 0);
+        }
+
+        var total = Math.addExact(Math.multiplyExact(units, CENTS_PER_UNIT), cents);
+        return ofCents(negative ? -total : total);
+    }
+
+    public Amount plus(Amount other) {
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    /**
+     * This amount taken as a rate in percent ({@code 25.00}) of {@code base}, rounded half away
+     * from zero to a cent.
+     */
+    public Amount percentOf(Amount base) {
+        var product = Math.multiplyExact(base.cents, cents);
+        var result = product / PERCENT_SCALE;
+        if (Math.abs(product % PERCENT_SCALE) >= PERCENT_SCALE / 2) {
+            result += Long.signum(product);
+        }
+        return ofCents(result);
+    }
+
+    /**
+     * Appends {@code 1234.56}, e.g. to the ZKI input.
+     */
+    public StringBuilder appendTo(StringBuilder sb) {
+        if (cents < 0) {
+            sb.append('-');
+        }
+        var abs = Math.abs(cents);
+        var fraction = (int) (abs % CENTS_PER_UNIT);
+        return sb.append(abs / CENTS_PER_UNIT)
+                .append('.')
+                .append((char) ('0' + fraction / 10))
+                .append((char) ('0' + fraction % 10));
+    }
+
+    @JsonValue
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder(24)).toString();
+    }
+
+    @Override
+    public int compareTo(Amount other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    private static int digit(String text, int i) {
+        var c = text.charAt(i);
+        if (c < '0' || c > '9') {
+            throw new IllegalArgumentException("Not an amount: '" + text + "'");
+        }
+        return c - '0';
+    }
+}
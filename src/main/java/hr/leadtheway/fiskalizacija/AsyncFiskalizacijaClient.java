@@ -0,0 +1,98 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.FiskalizacijaPortType;
+import hr.leadtheway.wsdl.NapojnicaOdgovor;
+import hr.leadtheway.wsdl.NapojnicaZahtjev;
+import hr.leadtheway.wsdl.PromijeniNacPlacOdgovor;
+import hr.leadtheway.wsdl.PromijeniNacPlacZahtjev;
+import hr.leadtheway.wsdl.ProvjeraOdgovor;
+import hr.leadtheway.wsdl.ProvjeraZahtjev;
+import hr.leadtheway.wsdl.RacunOdgovor;
+import hr.leadtheway.wsdl.RacunZahtjev;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking facade over the pooled {@link FiskalizacijaPortType}. Every call runs on its
+ * own virtual thread, so a request waiting on CIS does not hold a platform thread. Each
+ * operation has its own concurrency limit; callers over the limit queue on a virtual thread.
+ * The limits together must fit into the port pool, otherwise a caller holding a permit could
+ * still time out waiting for a port.
+ */
+@Service
+public class AsyncFiskalizacijaClient {
+
+    private final FiskalizacijaPortType port;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Semaphore racuniPermits;
+    private final Semaphore napojnicaPermits;
+    private final Semaphore promijeniNacPlacPermits;
+    private final Semaphore provjeraPermits;
+
+    public AsyncFiskalizacijaClient(
+            FiskalizacijaPortType fiskalizacijaPort,
+            @Value("${fina.client.async.racuni.max-concurrent}") int racuniLimit,
+            @Value("${fina.client.async.napojnica.max-concurrent}") int napojnicaLimit,
+            @Value("${fina.client.async.promijeni-nac-plac.max-concurrent}") int promijeniNacPlacLimit,
+            @Value("${fina.client.async.provjera.max-concurrent}") int provjeraLimit,
+            @Value("${fina.client.pool.size}") int poolSize
+    ) {
+        var limits = racuniLimit + napojnicaLimit + promijeniNacPlacLimit + provjeraLimit;
+        if (limits > poolSize) {
+            throw new IllegalArgumentException("fina.client.async limits add up to " + limits
+                    + ", more than the " + poolSize + " ports in fina.client.pool.size");
+        }
+
+        this.port = fiskalizacijaPort;
+        this.racuniPermits = new Semaphore(racuniLimit, true);
+        this.napojnicaPermits = new Semaphore(napojnicaLimit, true);
+        this.promijeniNacPlacPermits = new Semaphore(promijeniNacPlacLimit, true);
+        this.provjeraPermits = new Semaphore(provjeraLimit, true);
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdown();
+    }
+
+    public CompletableFuture<RacunOdgovor> racuni(RacunZahtjev zahtjev) {
+        return submit(racuniPermits, () -> port.racuni(zahtjev));
+    }
+
+    public CompletableFuture<NapojnicaOdgovor> napojnica(NapojnicaZahtjev zahtjev) {
+        return submit(napojnicaPermits, () -> port.napojnica(zahtjev));
+    }
+
+    public CompletableFuture<PromijeniNacPlacOdgovor> promijeniNacPlac(PromijeniNacPlacZahtjev zahtjev) {
+        return submit(promijeniNacPlacPermits, () -> port.promijeniNacPlac(zahtjev));
+    }
+
+    public CompletableFuture<ProvjeraOdgovor> provjera(ProvjeraZahtjev zahtjev) {
+        return submit(provjeraPermits, () -> port.provjera(zahtjev));
+    }
+
+    private <R> CompletableFuture<R> submit(Semaphore permits, Supplier<R> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(ex);
+            }
+            try {
+                return call.get();
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+}
@@ -0,0 +1,147 @@
+package hr.leadtheway.fiskalizacija;
+
+import com.sun.xml.ws.developer.JAXWSProperties;
+import jakarta.xml.ws.BindingProvider;
+import jakarta.xml.ws.handler.MessageContext;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP transport settings shared by every port and dispatch talking to CIS.
+ * <p>
+ * JAX-WS RI sends over {@code HttpsURLConnection}, whose keep-alive cache only hands a pooled
+ * connection back when the {@link SSLSocketFactory} is the same instance, so all ports get the
+ * one factory built here. The cache itself is set up with JVM flags, see {@code bootRun} in
+ * {@code build.gradle}: the JDK reads them once, before this class could change them.
+ * <p>
+ * The {@link SSLContext} has a client session cache of its own; whether a new connection
+ * actually resumes a session is up to the server and shows in {@link Stats}.
+ */
+public class CisTransport {
+
+    private final Settings settings;
+    private final MeteredSocketFactory socketFactory;
+    private final Map<String, List<String>> requestHeaders;
+
+    public CisTransport(Settings settings) throws GeneralSecurityException {
+        this.settings = settings;
+
+        var sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, null, null);
+        var sessions = sslContext.getClientSessionContext();
+        sessions.setSessionCacheSize(settings.tlsSessionCacheSize());
+        sessions.setSessionTimeout((int) settings.tlsSessionTimeout().toSeconds());
+
+        this.socketFactory = new MeteredSocketFactory(sslContext.getSocketFactory());
+        this.requestHeaders = settings.gzip() ? Map.of("Accept-Encoding", List.of("gzip")) : Map.of();
+    }
+
+    public void configure(BindingProvider bindingProvider) {
+        var requestContext = bindingProvider.getRequestContext();
+        requestContext.put(JAXWSProperties.CONNECT_TIMEOUT, (int) settings.connectTimeout().toMillis());
+        requestContext.put(JAXWSProperties.REQUEST_TIMEOUT, (int) settings.requestTimeout().toMillis());
+        requestContext.put(JAXWSProperties.SSL_SOCKET_FACTORY, socketFactory);
+        if (!requestHeaders.isEmpty()) {
+            requestContext.put(MessageContext.HTTP_REQUEST_HEADERS, requestHeaders);
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(socketFactory.sockets.sum(), socketFactory.fullHandshakes.sum(), socketFactory.resumedHandshakes.sum());
+    }
+
+    /**
+     * {@code sockets} only grows when the keep-alive cache had no idle connection to hand out.
+     */
+    public record Stats(long sockets, long fullHandshakes, long resumedHandshakes) {
+    }
+
+    public record Settings(
+            Duration connectTimeout,
+            Duration requestTimeout,
+            int tlsSessionCacheSize,
+            Duration tlsSessionTimeout,
+            boolean gzip
+    ) {
+    }
+
+    /* ────────── socket factory ────────── */
+
+    private static final class MeteredSocketFactory extends SSLSocketFactory {
+
+        private final SSLSocketFactory delegate;
+        private final LongAdder sockets = new LongAdder();
+        private final LongAdder fullHandshakes = new LongAdder();
+        private final LongAdder resumedHandshakes = new LongAdder();
+
+        private MeteredSocketFactory(SSLSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return delegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+            return metered(delegate.createSocket(s, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return metered(delegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return metered(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return metered(delegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return metered(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return metered(delegate.createSocket(address, port, localAddress, localPort));
+        }
+
+        private Socket metered(Socket socket) {
+            sockets.increment();
+            if (socket instanceof SSLSocket sslSocket) {
+                var created = System.currentTimeMillis();
+                // a resumed session was created before this socket existed
+                sslSocket.addHandshakeCompletedListener(event -> {
+                    if (event.getSession().getCreationTime() < created) {
+                        resumedHandshakes.increment();
+                    } else {
+                        fullHandshakes.increment();
+                    }
+                });
+            }
+            return socket;
+        }
+    }
+}
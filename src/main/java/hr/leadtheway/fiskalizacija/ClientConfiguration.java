@@ -1,21 +1,26 @@
 package hr.leadtheway.fiskalizacija;
 
 import hr.leadtheway.wsdl.FiskalizacijaPortType;
-import hr.leadtheway.wsdl.FiskalizacijaService;
-import jakarta.xml.ws.BindingProvider;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.xml.ws.Dispatch;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.Resource;
+import org.springframework.util.unit.DataSize;
 
-import java.security.KeyStore.PrivateKeyEntry;
-import java.security.PrivateKey;
-import java.security.cert.Certificate;
+import javax.xml.transform.Source;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
 import java.util.Arrays;
-import java.util.List;
-
-import static java.security.KeyStore.getInstance;
 
 @Configuration
 public class ClientConfiguration {
@@ -28,7 +33,7 @@ public class ClientConfiguration {
     public ClientConfiguration(
             @Value("${fina.keystore.path}") Resource p12PrivateKeyFile,
             @Value("${fina.keystore.storepass}") char[] p12StorePass,
-            @Value("${fina.keystore.alias}") String p12KeyAlias,
+            @Value("${fina.keystore.alias:#{null}}") String p12KeyAlias,
             @Value("${fina.keystore.keypass}") char[] p12KeyPass
     ) {
         this.p12PrivateKeyFile = p12PrivateKeyFile;
@@ -38,33 +43,167 @@ public class ClientConfiguration {
     }
 
     @Bean
-    public PrivateKeyEntry p12PrivateKey() throws Exception {
-        var ks = getInstance("PKCS12");
-        try (var fis = p12PrivateKeyFile.getInputStream()) {
-            ks.load(fis, p12StorePass);
-        }
-
+    public SigningKeys signingKeys() throws Exception {
+        var signingKeys = new SigningKeys(p12PrivateKeyFile, p12StorePass, p12KeyPass, p12KeyAlias);
         Arrays.fill(p12StorePass, '\0');
-
-        var key = ks.getKey(p12KeyAlias, p12KeyPass);
         Arrays.fill(p12KeyPass, '\0');
-        var cert = ks.getCertificate(p12KeyAlias);
 
-        return new PrivateKeyEntry((PrivateKey) key, new Certificate[]{cert});
+        signingKeys.watch();
+        return signingKeys;
+    }
+
+    @Bean
+    public CisTransport cisTransport(
+            @Value("${fina.client.connect-timeout}") Duration connectTimeout,
+            @Value("${fina.client.request-timeout}") Duration requestTimeout,
+            @Value("${fina.client.tls.session-cache-size}") int tlsSessionCacheSize,
+            @Value("${fina.client.tls.session-timeout}") Duration tlsSessionTimeout,
+            @Value("${fina.client.gzip}") boolean gzip
+    ) throws GeneralSecurityException {
+        return new CisTransport(new CisTransport.Settings(
+                connectTimeout, requestTimeout, tlsSessionCacheSize, tlsSessionTimeout, gzip
+        ));
     }
 
     @Bean
-    public FiskalizacijaPortType fiskalizacijaPort(PrivateKeyEntry privateKeyEntry) {
-        var port = new FiskalizacijaService().getFiskalizacijaPortType();
+    public FiskalizacijaPortFactory fiskalizacijaPortFactory(
+            SigningKeys signingKeys,
+            CisTransport cisTransport,
+            @Value("${fina.client.endpoint}") String endpoint,
+            ObservationRegistry observationRegistry
+    ) {
+        return new FiskalizacijaPortFactory(signingKeys, cisTransport, endpoint, observationRegistry);
+    }
+
+    @Bean
+    public PortPool<FiskalizacijaPortType> fiskalizacijaPortPool(
+            FiskalizacijaPortFactory portFactory,
+            @Value("${fina.client.pool.size}") int poolSize,
+            @Value("${fina.client.pool.borrow-timeout}") Duration borrowTimeout
+    ) {
+        return new PortPool<>(FiskalizacijaPortType.class, poolSize, borrowTimeout, portFactory::create);
+    }
 
-        var outboundSignatureHandler = new XmlSignatureOutboundHandler(privateKeyEntry.getPrivateKey(), (X509Certificate) privateKeyEntry.getCertificate());
+    @Bean
+    public FiskalizacijaPortType fiskalizacijaPort(PortPool<FiskalizacijaPortType> fiskalizacijaPortPool, ObservationRegistry observationRegistry) {
+        return fiskalizacijaPortPool.asPort(observationRegistry, Instrumentation.CIS);
+    }
+
+    @Bean
+    public MeterBinder fiskalizacijaClientMetrics(
+            PortPool<FiskalizacijaPortType> fiskalizacijaPortPool,
+            PortPool<Dispatch<Source>> fiskalizacijaDispatchPool,
+            CisTransport cisTransport
+    ) {
+        return registry -> {
+            bindPool(registry, "port", fiskalizacijaPortPool);
+            bindPool(registry, "dispatch", fiskalizacijaDispatchPool);
+
+            FunctionCounter.builder("fiskalizacija.transport.sockets", cisTransport, t -> t.stats().sockets())
+                    .description("Connections opened to CIS, reused keep-alive connections are not counted")
+                    .register(registry);
+            FunctionCounter.builder("fiskalizacija.transport.handshakes", cisTransport, t -> t.stats().fullHandshakes())
+                    .tag("type", "full")
+                    .register(registry);
+            FunctionCounter.builder("fiskalizacija.transport.handshakes", cisTransport, t -> t.stats().resumedHandshakes())
+                    .tag("type", "resumed")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder fiskalizacijaTenantMetrics(TenantRouter tenantRouter) {
+        // totals only, a tag per OIB would be a time series per business
+        return registry -> {
+            Gauge.builder("fiskalizacija.tenants", tenantRouter, r -> r.stats().tenants()).register(registry);
+            FunctionCounter.builder("fiskalizacija.tenants.rejected", tenantRouter, r -> r.stats().rateLimited())
+                    .tag("reason", "rate")
+                    .register(registry);
+            FunctionCounter.builder("fiskalizacija.tenants.rejected", tenantRouter, r -> r.stats().bulkheadFull())
+                    .tag("reason", "bulkhead")
+                    .register(registry);
+        };
+    }
+
+    private static void bindPool(MeterRegistry registry, String pool, PortPool<?> portPool) {
+        Gauge.builder("fiskalizacija.pool.active", portPool, p -> p.stats().active()).tag("pool", pool).register(registry);
+        Gauge.builder("fiskalizacija.pool.idle", portPool, p -> p.stats().idle()).tag("pool", pool).register(registry);
+        FunctionCounter.builder("fiskalizacija.pool.timeouts", portPool, p -> p.stats().timeouts()).tag("pool", pool).register(registry);
+        FunctionCounter.builder("fiskalizacija.pool.wait", portPool, p -> p.stats().totalWait().toNanos() / 1e9)
+                .tag("pool", pool)
+                .baseUnit("seconds")
+                .register(registry);
+    }
 
-        if (port instanceof BindingProvider bindingProvider) {
-            bindingProvider.getBinding().setHandlerChain(List.of(outboundSignatureHandler));
-        } else {
-            throw new IllegalArgumentException("Unsupported port");
+    @Bean
+    public OfflineJournal offlineJournal(
+            @Value("${fina.offline.journal}") Path journalFile,
+            @Value("${fina.offline.fsync}") boolean fsync
+    ) throws IOException {
+        return OfflineJournal.open(journalFile, fsync);
+    }
+
+    @Bean
+    public PdfReceiptCache pdfReceiptCache(
+            @Value("${pdf.cache.directory}") Path directory,
+            @Value("${pdf.cache.max-size}") DataSize maxSize
+    ) throws IOException {
+        return PdfReceiptCache.open(directory, maxSize.toBytes());
+    }
+
+    @Bean
+    public MeterBinder pdfReceiptCacheMetrics(PdfReceiptCache pdfReceiptCache) {
+        return registry -> {
+            Gauge.builder("pdf.cache.entries", pdfReceiptCache, c -> c.stats().entries()).register(registry);
+            Gauge.builder("pdf.cache.size", pdfReceiptCache, c -> c.stats().bytes()).baseUnit("bytes").register(registry);
+        };
+    }
+
+    @Bean
+    public JirIndex jirIndex(
+            @Value("${fina.dedup.index}") Path indexFile,
+            @Value("${fina.dedup.fsync}") boolean fsync,
+            @Value("${fina.dedup.cache-size}") int cacheSize
+    ) throws IOException {
+        return JirIndex.open(indexFile, fsync, cacheSize);
+    }
+
+    @Bean
+    public MeterBinder fiskalizacijaDedupMetrics(RacunDeduplicator racunDeduplicator, JirIndex jirIndex) {
+        return registry -> {
+            FunctionCounter.builder("fiskalizacija.dedup", racunDeduplicator, d -> d.stats().hits()).tag("result", "hit").register(registry);
+            FunctionCounter.builder("fiskalizacija.dedup", racunDeduplicator, d -> d.stats().coalesced()).tag("result", "coalesced").register(registry);
+            FunctionCounter.builder("fiskalizacija.dedup", racunDeduplicator, d -> d.stats().misses()).tag("result", "miss").register(registry);
+            Gauge.builder("fiskalizacija.dedup.entries", jirIndex, JirIndex::size).register(registry);
+        };
+    }
+
+    @Bean
+    @SuppressWarnings("unchecked")
+    public PortPool<Dispatch<Source>> fiskalizacijaDispatchPool(
+            FiskalizacijaPortFactory portFactory,
+            @Value("${fina.client.pool.size}") int poolSize,
+            @Value("${fina.client.pool.borrow-timeout}") Duration borrowTimeout
+    ) {
+        return new PortPool<>((Class<Dispatch<Source>>) (Class<?>) Dispatch.class, poolSize, borrowTimeout, portFactory::createDispatch);
+    }
+
+    @Bean
+    public RacunOdgovorReader racunOdgovorReader(@Value("${fina.cis.certificate:#{null}}") Resource cisCertificate) throws Exception {
+        if (cisCertificate == null) {
+            return new RacunOdgovorReader(null);
+        }
+        try (var in = cisCertificate.getInputStream()) {
+            return new RacunOdgovorReader((X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(in));
         }
+    }
 
-        return port;
+    @Bean
+    public StreamingFiskalizacijaClient streamingFiskalizacijaClient(
+            SigningKeys signingKeys,
+            PortPool<Dispatch<Source>> fiskalizacijaDispatchPool,
+            RacunOdgovorReader racunOdgovorReader
+    ) {
+        return new StreamingFiskalizacijaClient(new StreamingXmlSigner(signingKeys), fiskalizacijaDispatchPool, racunOdgovorReader);
     }
 }
\ No newline at end of file
@@ -0,0 +1,544 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.fiskalizacija.PdfReceiptGenerator.InvoiceItem;
+import hr.leadtheway.wsdl.BrojRacunaType;
+import hr.leadtheway.wsdl.NacinPlacanjaType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static hr.leadtheway.fiskalizacija.ReceiptText.BROJ_FAKTURE_LABEL;
+import static hr.leadtheway.fiskalizacija.ReceiptText.DATUM_IZDAVANJA_LABEL;
+import static hr.leadtheway.fiskalizacija.ReceiptText.EUR_SUFFIX;
+import static hr.leadtheway.fiskalizacija.ReceiptText.FOOTER_LINE1;
+import static hr.leadtheway.fiskalizacija.ReceiptText.FOOTER_LINE2;
+import static hr.leadtheway.fiskalizacija.ReceiptText.HEADER_NETO_IZNOS;
+import static hr.leadtheway.fiskalizacija.ReceiptText.HEADER_OPIS;
+import static hr.leadtheway.fiskalizacija.ReceiptText.JIR_LABEL;
+import static hr.leadtheway.fiskalizacija.ReceiptText.NACIN_PLACANJA_LABEL;
+import static hr.leadtheway.fiskalizacija.ReceiptText.PERCENT_SUFFIX;
+import static hr.leadtheway.fiskalizacija.ReceiptText.RACUN_IZDAO_LABEL;
+import static hr.leadtheway.fiskalizacija.ReceiptText.RACUN_TITLE;
+import static hr.leadtheway.fiskalizacija.ReceiptText.UKUPAN_IZNOS_POREZA_LABEL;
+import static hr.leadtheway.fiskalizacija.ReceiptText.UKUPAN_NETO_IZNOS_LABEL;
+import static hr.leadtheway.fiskalizacija.ReceiptText.UKUPAN_PLACANJE_IZNOS_LABEL;
+import static hr.leadtheway.fiskalizacija.ReceiptText.VRIJEME_IZDAVANJA_LABEL;
+import static hr.leadtheway.fiskalizacija.ReceiptText.ZKI_LABEL;
+import static hr.leadtheway.fiskalizacija.ReceiptText.nacinPlacanja;
+
+/**
+ * The receipt of {@link PdfReceiptGenerator} for thermal till printers, as ESC/POS commands or
+ * as plain UTF-8 text with the same layout. Lines are {@code columns} characters wide (48 in
+ * font A on 80 mm paper, 32 on 58 mm), the printer draws the QR code from its
+ * {@code GS ( k} command, so nothing is rasterized here.
+ * <p>
+ * Text is encoded char by char into a {@link Buffer} the caller keeps, rendering into a
+ * reused buffer allocates nothing but the QR URL.
+ */
+@Service
+public final class EscPosReceiptRenderer {
+
+    /* ────────── string literals ────────── */
+    private static final String HEADER_KOLICINA = "Kol.";
+    private static final String POREZ_LABEL = "  Porez ";
+
+    /* ────────── layout ────────── */
+    private static final int MIN_COLUMNS = 32;
+    private static final int QUANTITY_WIDTH = 5;
+    private static final int AMOUNT_WIDTH = 14;
+    private static final int FEED_BEFORE_CUT = 3;
+
+    /* ────────── ESC/POS ────────── */
+    private static final byte ESC = 0x1B;
+    private static final byte GS = 0x1D;
+    private static final byte LF = 0x0A;
+    // ESC t 18, PC852 Latin 2 holds every Croatian letter
+    private static final int CODE_PAGE_PC852 = 18;
+    private static final int ALIGN_LEFT = 0;
+    private static final int ALIGN_CENTER = 1;
+    // GS ! n, double width and height
+    private static final int DOUBLE_SIZE = 0x11;
+    private static final int QR_MODEL_2 = '2';
+    // dots per module, a 37 module code (version 5) is 222 of the 576 dots of an 80 mm line
+    private static final int QR_MODULE_SIZE = 6;
+    // same as the PDF
+    private static final int QR_ERROR_CORRECTION_Q = '2';
+    // GS V 66 n, feeds n dots and cuts partially
+    private static final int CUT_PARTIAL_AFTER_FEED = 66;
+
+    // encoded bytes of U+0000..U+017F, Basic Latin to Latin Extended-A
+    private static final byte[] PC852 = pc852();
+
+    private final int columns;
+
+    public EscPosReceiptRenderer(@Value("${escpos.columns}") int columns) {
+        if (columns < MIN_COLUMNS) {
+            throw new IllegalArgumentException("A receipt line needs at least " + MIN_COLUMNS + " columns: " + columns);
+        }
+        this.columns = columns;
+    }
+
+    /**
+     * Renders the ESC/POS commands of {@code receipt} into {@code out}, which is reset first.
+     */
+    public void render(Receipt receipt, Buffer out) {
+        out.reset(true);
+        render(receipt, out, columns);
+    }
+
+    /**
+     * Renders {@code receipt} as UTF-8 text into {@code out}, which is reset first. The QR code
+     * is replaced by its URL.
+     */
+    public void renderText(Receipt receipt, Buffer out) {
+        out.reset(false);
+        render(receipt, out, columns);
+    }
+
+    private static void render(Receipt receipt, Buffer out, int columns) {
+        out.init();
+        out.command(ESC, 't', CODE_PAGE_PC852);
+
+        addTitle(out, columns);
+        addSupplierBlock(out, receipt, columns);
+        addMetaBlock(out, receipt.brojRacuna(), receipt.datumIVrijeme(), receipt.nacinPlacanja());
+        addItemsTable(out, receipt, columns);
+        addTotals(out, receipt.iznosUkupno(), columns);
+        addLegalNotice(out, receipt, columns);
+        addQrCodeAndFooter(out, receipt, columns);
+
+        out.command(GS, 'V', CUT_PARTIAL_AFTER_FEED, FEED_BEFORE_CUT);
+    }
+
+    private static void addTitle(Buffer out, int columns) {
+        out.command(ESC, 'a', ALIGN_CENTER);
+        out.command(ESC, 'E', 1);
+        out.command(GS, '!', DOUBLE_SIZE);
+        // plain text has no double size
+        out.centered(RACUN_TITLE, columns).newLine();
+        out.command(GS, '!', 0);
+        out.command(ESC, 'E', 0);
+        out.newLine();
+    }
+
+    private static void addSupplierBlock(Buffer out, Receipt receipt, int columns) {
+        for (var line : receipt.supplierAddressLines()) {
+            out.centered(line, columns).newLine();
+        }
+        out.command(ESC, 'a', ALIGN_LEFT);
+        out.newLine();
+    }
+
+    private static void addMetaBlock(Buffer out, BrojRacunaType br, LocalDateTime dt, NacinPlacanjaType np) {
+        out.text(BROJ_FAKTURE_LABEL)
+                .text(br.getBrOznRac()).text("/").text(br.getOznPosPr()).text("/").text(br.getOznNapUr())
+                .newLine();
+
+        out.text(DATUM_IZDAVANJA_LABEL)
+                .digits(dt.getDayOfMonth(), 2).text(".").digits(dt.getMonthValue(), 2).text(".").digits(dt.getYear(), 4)
+                .newLine();
+
+        out.text(VRIJEME_IZDAVANJA_LABEL)
+                .digits(dt.getHour(), 2).text(":").digits(dt.getMinute(), 2).text(":").digits(dt.getSecond(), 2)
+                .newLine();
+
+        out.text(NACIN_PLACANJA_LABEL).text(nacinPlacanja(np)).newLine();
+        out.newLine();
+    }
+
+    private static void addItemsTable(Buffer out, Receipt receipt, int columns) {
+        var descriptionWidth = columns - QUANTITY_WIDTH - AMOUNT_WIDTH;
+
+        out.command(ESC, 'E', 1);
+        out.text(HEADER_OPIS).spaces(descriptionWidth - HEADER_OPIS.length())
+                .spaces(QUANTITY_WIDTH - HEADER_KOLICINA.length()).text(HEADER_KOLICINA)
+                .spaces(AMOUNT_WIDTH - HEADER_NETO_IZNOS.length()).text(HEADER_NETO_IZNOS)
+                .newLine();
+        out.command(ESC, 'E', 0);
+        out.rule(columns);
+
+        for (var item : receipt.items()) {
+            addItem(out, item, descriptionWidth, columns);
+            out.totals.add(item);
+        }
+
+        out.rule(columns);
+    }
+
+    /**
+     * A description longer than its column continues on the lines below, the quantity and
+     * amount stay on the first one. The tax of a taxed item follows on a line of its own.
+     */
+    private static void addItem(Buffer out, InvoiceItem item, int descriptionWidth, int columns) {
+        var description = item.description();
+        // one space keeps the description apart from the quantity
+        var width = descriptionWidth - 1;
+        var end = lineEnd(description, 0, width);
+
+        out.text(description, 0, end).spaces(descriptionWidth - end);
+        out.spaces(QUANTITY_WIDTH - Buffer.digitCount(item.quantity())).digits(item.quantity(), 1);
+        out.spaces(AMOUNT_WIDTH - Buffer.moneyLength(item.netAmount())).money(item.netAmount());
+        out.newLine();
+
+        out.wrapped(description, nextLine(description, end), width);
+
+        if (item.taxRate() != null) {
+            var tax = item.tax();
+            out.text(POREZ_LABEL).amount(item.taxRate()).text(PERCENT_SUFFIX)
+                    .spaces(columns - POREZ_LABEL.length() - Buffer.amountLength(item.taxRate()) - PERCENT_SUFFIX.length()
+                            - Buffer.moneyLength(tax))
+                    .money(tax)
+                    .newLine();
+        }
+    }
+
+    private static void addTotals(Buffer out, Amount amount, int columns) {
+        addTotal(out, UKUPAN_NETO_IZNOS_LABEL, out.totals.net(), columns);
+        if (out.totals.taxed()) {
+            addTotal(out, UKUPAN_IZNOS_POREZA_LABEL, out.totals.tax(), columns);
+        }
+
+        out.command(ESC, 'E', 1);
+        // the amount CIS got, not a sum of the rounded item taxes
+        addTotal(out, UKUPAN_PLACANJE_IZNOS_LABEL, amount, columns);
+        out.command(ESC, 'E', 0);
+        out.newLine();
+    }
+
+    private static void addTotal(Buffer out, String label, Amount amount, int columns) {
+        out.text(label).spaces(columns - label.length() - Buffer.moneyLength(amount)).money(amount).newLine();
+    }
+
+    private static void addLegalNotice(Buffer out, Receipt receipt, int columns) {
+        out.wrapped(receipt.legalNotice(), columns);
+        out.newLine();
+        out.text(JIR_LABEL).text(receipt.jir()).newLine();
+        out.text(ZKI_LABEL).text(receipt.zki()).newLine();
+        out.text(RACUN_IZDAO_LABEL).text(receipt.operatorCode()).newLine();
+        out.newLine();
+    }
+
+    private static void addQrCodeAndFooter(Buffer out, Receipt receipt, int columns) {
+        var qrData = PdfReceiptGenerator.buildQrData(receipt.jir(), receipt.zki(), receipt.datumIVrijeme(), receipt.iznosUkupno());
+
+        out.command(ESC, 'a', ALIGN_CENTER);
+        if (out.escPos) {
+            out.qrCode(qrData);
+        } else {
+            out.wrapped(qrData, columns);
+        }
+        out.newLine();
+        out.wrapped(FOOTER_LINE1, columns);
+        out.wrapped(FOOTER_LINE2, columns);
+        out.command(ESC, 'a', ALIGN_LEFT);
+    }
+
+    /**
+     * Breaks a line at the last space that fits, a word longer than a line is cut.
+     */
+    private static int lineEnd(String s, int from, int columns) {
+        var end = Math.min(s.length(), from + columns);
+        if (end < s.length() && s.charAt(end) != ' ') {
+            var space = s.lastIndexOf(' ', end);
+            if (space > from) {
+                end = space;
+            }
+        }
+        return end;
+    }
+
+    private static int nextLine(String s, int end) {
+        while (end < s.length() && s.charAt(end) == ' ') {
+            end++;
+        }
+        return end;
+    }
+
+    private static byte[] pc852() {
+        var charset = Charset.forName("IBM852");
+        var encoder = charset.newEncoder();
+        var table = new byte[0x180];
+        for (var c = 0; c < table.length; c++) {
+            table[c] = encoder.canEncode((char) c)
+                    ? String.valueOf((char) c).getBytes(charset)[0]
+                    : (byte) '?';
+        }
+        return table;
+    }
+
+    /**
+     * A growable byte array, kept by a till (or a worker thread) and reused for every receipt.
+     */
+    public static final class Buffer {
+
+        private static final int INITIAL_SIZE = 4 * 1024;
+
+        private byte[] bytes;
+        private int size;
+        private boolean escPos;
+        private final ReceiptTotals totals = new ReceiptTotals();
+
+        public Buffer() {
+            this(INITIAL_SIZE);
+        }
+
+        public Buffer(int initialSize) {
+            bytes = new byte[initialSize];
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(bytes, 0, size);
+        }
+
+        private void reset(boolean escPos) {
+            this.size = 0;
+            this.totals.reset();
+            this.escPos = escPos;
+        }
+
+        /* ────────── ESC/POS commands, left out of plain text ────────── */
+
+        // fixed arities, varargs would allocate an array per command
+
+        private void command(int prefix, int command, int arg) {
+            if (escPos) {
+                ensure(3);
+                bytes[size++] = (byte) prefix;
+                bytes[size++] = (byte) command;
+                bytes[size++] = (byte) arg;
+            }
+        }
+
+        private void command(int prefix, int command, int arg1, int arg2) {
+            if (escPos) {
+                command(prefix, command, arg1);
+                ensure(1);
+                bytes[size++] = (byte) arg2;
+            }
+        }
+
+        private void init() {
+            if (escPos) {
+                ensure(2);
+                bytes[size++] = ESC;
+                bytes[size++] = '@';
+            }
+        }
+
+        /**
+         * {@code GS ( k} with function 165 to 181: model, module size, error correction, store
+         * and print. The URL is ASCII, so it goes out as is.
+         */
+        private void qrCode(String data) {
+            qrFunction('A', QR_MODEL_2, 0);
+            qrFunction('C', QR_MODULE_SIZE);
+            qrFunction('E', QR_ERROR_CORRECTION_Q);
+
+            qrHeader(data.length() + 3, 'P');
+            // the store function takes a two byte length
+            bytes[size - 3] = (byte) (data.length() + 3 >>> 8);
+            ensure(1 + data.length());
+            bytes[size++] = '0';
+            for (var i = 0; i < data.length(); i++) {
+                bytes[size++] = (byte) data.charAt(i);
+            }
+
+            qrFunction('Q', '0');
+        }
+
+        private void qrFunction(int function, int arg) {
+            qrHeader(3, function);
+            bytes[size++] = (byte) arg;
+        }
+
+        private void qrFunction(int function, int arg1, int arg2) {
+            qrHeader(4, function);
+            bytes[size++] = (byte) arg1;
+            bytes[size++] = (byte) arg2;
+        }
+
+        // leaves room for the arguments
+        private void qrHeader(int length, int function) {
+            ensure(5 + length);
+            bytes[size++] = GS;
+            bytes[size++] = '(';
+            bytes[size++] = 'k';
+            bytes[size++] = (byte) length;
+            bytes[size++] = 0;
+            bytes[size++] = '1';
+            bytes[size++] = (byte) function;
+        }
+
+        /* ────────── text ────────── */
+
+        private Buffer text(String s) {
+            return s == null ? this : text(s, 0, s.length());
+        }
+
+        private Buffer text(String s, int from, int to) {
+            // a char is one byte in PC852 and at most three in UTF-8
+            ensure(3 * (to - from));
+            for (var i = from; i < to; i++) {
+                var c = s.charAt(i);
+                if (escPos) {
+                    bytes[size++] = pc852(c);
+                } else {
+                    utf8(c);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Plain text pads {@code s} to the middle of the line, the printer centers it itself.
+         */
+        private Buffer centered(String s, int columns) {
+            if (!escPos) {
+                spaces((columns - s.length()) / 2);
+            }
+            return text(s);
+        }
+
+        private void wrapped(String s, int columns) {
+            wrapped(s, 0, columns);
+        }
+
+        private void wrapped(String s, int from, int columns) {
+            while (from < s.length()) {
+                var end = lineEnd(s, from, columns);
+                text(s, from, end).newLine();
+                from = nextLine(s, end);
+            }
+        }
+
+        /**
+         * Writes {@code value} in decimal, zero-padded to {@code width} digits.
+         */
+        private Buffer digits(long value, int width) {
+            if (value < 0) {
+                // a returned item
+                ensure(1);
+                bytes[size++] = '-';
+                value = -value;
+            }
+            var count = Math.max(width, digitCount(value));
+            ensure(count);
+            for (var i = size + count - 1; i >= size; i--) {
+                bytes[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            size += count;
+            return this;
+        }
+
+        private static int digitCount(long value) {
+            var count = value < 0 ? 2 : 1;
+            value = Math.abs(value);
+            while (value >= 10) {
+                value /= 10;
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * Writes {@code 1234.56}, like {@link Amount#appendTo} but straight into the buffer.
+         */
+        private Buffer amount(Amount amount) {
+            var cents = amount.cents();
+            if (cents < 0) {
+                ensure(1);
+                bytes[size++] = '-';
+            }
+            var abs = Math.abs(cents);
+            return digits(abs / 100, 1).text(".").digits(abs % 100, 2);
+        }
+
+        private Buffer money(Amount amount) {
+            return amount(amount).text(EUR_SUFFIX);
+        }
+
+        private static int amountLength(Amount amount) {
+            // sign, units, dot and two decimals
+            return digitCount(amount.cents() / 100) + (amount.cents() < 0 && amount.cents() > -100 ? 1 : 0) + 3;
+        }
+
+        private static int moneyLength(Amount amount) {
+            return amountLength(amount) + EUR_SUFFIX.length();
+        }
+
+        private Buffer spaces(int count) {
+            if (count > 0) {
+                ensure(count);
+                Arrays.fill(bytes, size, size + count, (byte) ' ');
+                size += count;
+            }
+            return this;
+        }
+
+        private void rule(int columns) {
+            ensure(columns + 1);
+            Arrays.fill(bytes, size, size + columns, (byte) '-');
+            size += columns;
+            newLine();
+        }
+
+        private Buffer newLine() {
+            ensure(1);
+            bytes[size++] = LF;
+            return this;
+        }
+
+        private byte pc852(char c) {
+            if (c < PC852.length) {
+                return control(c) ? (byte) ' ' : PC852[c];
+            }
+            return switch (c) {
+                case '–', '—' -> (byte) '-';
+                case '‘', '’' -> (byte) '\'';
+                case '“', '”', '„' -> (byte) '"';
+                default -> (byte) '?';
+            };
+        }
+
+        private void utf8(char c) {
+            if (c < 0x80) {
+                bytes[size++] = control(c) ? (byte) ' ' : (byte) c;
+            } else if (c < 0x800) {
+                bytes[size++] = (byte) (0xC0 | c >>> 6);
+                bytes[size++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                // outside the BMP, nothing a receipt needs
+                bytes[size++] = '?';
+            } else {
+                bytes[size++] = (byte) (0xE0 | c >>> 12);
+                bytes[size++] = (byte) (0x80 | c >>> 6 & 0x3F);
+                bytes[size++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+
+        // receipt text must not smuggle in printer commands
+        private static boolean control(char c) {
+            return c < 0x20 || c == 0x7F || c >= 0x80 && c < 0xA0;
+        }
+
+        private void ensure(int count) {
+            if (size + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, size + count));
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.ObjectFactory;
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * The one {@link JAXBContext} for the generated {@code hr.leadtheway.wsdl} model. Contexts are
+ * thread-safe and expensive to build, marshallers are cheap and must not be shared.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class FiskalizacijaJaxb {
+
+    public static final String NAMESPACE = "http://www.apis-it.hr/fin/2012/types/f73";
+
+    public static final JAXBContext CONTEXT = createContext();
+
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+
+    public static byte[] marshal(Object element) {
+        var out = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+        try {
+            CONTEXT.createMarshaller().marshal(element, out);
+        } catch (JAXBException ex) {
+            throw new IllegalArgumentException("Cannot marshal " + element.getClass().getSimpleName(), ex);
+        }
+        return out.toByteArray();
+    }
+
+    public static <T> T unmarshal(byte[] xml, Class<T> type) {
+        try {
+            return type.cast(CONTEXT.createUnmarshaller().unmarshal(new ByteArrayInputStream(xml)));
+        } catch (JAXBException ex) {
+            throw new IllegalArgumentException("Cannot unmarshal " + type.getSimpleName(), ex);
+        }
+    }
+
+    private static JAXBContext createContext() {
+        try {
+            return JAXBContext.newInstance(ObjectFactory.class);
+        } catch (JAXBException ex) {
+            throw new IllegalStateException("Cannot create JAXBContext for hr.leadtheway.wsdl", ex);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.FiskalizacijaPortType;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.xml.ws.BindingProvider;
+import jakarta.xml.ws.Dispatch;
+import jakarta.xml.ws.Service;
+import jakarta.xml.ws.soap.SOAPBinding;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.Source;
+import java.util.List;
+
+/**
+ * Creates ports from one shared {@link Service}, so the JAX-WS runtime model is only built
+ * once. Every port gets its own signature handler, which signs with the key of the OIB in the
+ * message.
+ * <p>
+ * The service is created without a WSDL: the generated {@link FiskalizacijaPortType} carries
+ * everything the runtime needs in its annotations, so the WSDL and the schemas are never
+ * fetched or parsed, and the endpoint comes from configuration.
+ */
+public class FiskalizacijaPortFactory {
+
+    private static final String SERVICES_NAMESPACE = "http://www.apis-it.hr/fin/2012/services/FiskalizacijaService";
+    private static final QName SERVICE_NAME = new QName(SERVICES_NAMESPACE, "FiskalizacijaService");
+    private static final QName PORT_NAME = new QName(SERVICES_NAMESPACE, "FiskalizacijaPortType");
+
+    private final Service service;
+    private final SigningKeys signingKeys;
+    private final CisTransport transport;
+    private final ObservationRegistry observationRegistry;
+
+    public FiskalizacijaPortFactory(
+            SigningKeys signingKeys,
+            CisTransport transport,
+            String endpoint,
+            ObservationRegistry observationRegistry
+    ) {
+        this.signingKeys = signingKeys;
+        this.transport = transport;
+        this.observationRegistry = observationRegistry;
+        this.service = Service.create(SERVICE_NAME);
+        this.service.addPort(PORT_NAME, SOAPBinding.SOAP11HTTP_BINDING, endpoint);
+    }
+
+    public FiskalizacijaPortType create() {
+        var port = service.getPort(PORT_NAME, FiskalizacijaPortType.class);
+
+        var outboundSignatureHandler = new XmlSignatureOutboundHandler(signingKeys, observationRegistry);
+
+        if (port instanceof BindingProvider bindingProvider) {
+            bindingProvider.getBinding().setHandlerChain(List.of(outboundSignatureHandler));
+            transport.configure(bindingProvider);
+        } else {
+            throw new IllegalArgumentException("Unsupported port");
+        }
+
+        return port;
+    }
+
+    /**
+     * A payload-mode dispatch without handlers, for requests that are already signed.
+     */
+    public Dispatch<Source> createDispatch() {
+        var dispatch = service.createDispatch(PORT_NAME, Source.class, Service.Mode.PAYLOAD);
+        transport.configure(dispatch);
+        return dispatch;
+    }
+}
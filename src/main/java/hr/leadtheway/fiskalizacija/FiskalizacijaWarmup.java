@@ -0,0 +1,51 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.BrojRacunaType;
+import hr.leadtheway.wsdl.NacinPlacanjaType;
+import hr.leadtheway.wsdl.OznakaSlijednostiType;
+import hr.leadtheway.wsdl.RacunType;
+import hr.leadtheway.wsdl.RacunZahtjev;
+import hr.leadtheway.wsdl.ZaglavljeType;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Builds the shared {@link FiskalizacijaJaxb#CONTEXT} and runs one request through it while the
+ * application starts, so the first receipt after a deploy or a scale-out does not pay for it.
+ * The JAX-WS runtime model is built by the port pool, which creates all its ports eagerly.
+ */
+@Slf4j
+@Component
+public class FiskalizacijaWarmup {
+
+    @PostConstruct
+    public void warmUp() {
+        var start = System.nanoTime();
+
+        var sample = RacunZahtjev.builder()
+                .id("RacunZahtjev")
+                .zaglavlje(ZaglavljeType.builder()
+                        .idPoruke("00000000-0000-0000-0000-000000000000")
+                        .datumVrijeme("01.01.2025T00:00:00")
+                        .build())
+                .racun(RacunType.builder()
+                        .oib("00000000000")
+                        .uSustPdv(true)
+                        .datVrijeme("01.01.2025T00:00:00")
+                        .oznSlijed(OznakaSlijednostiType.P)
+                        .brRac(BrojRacunaType.builder().brOznRac("1").oznPosPr("WARMUP").oznNapUr("1").build())
+                        .iznosUkupno("0.00")
+                        .nacinPlac(NacinPlacanjaType.G)
+                        .oibOper("00000000000")
+                        .zastKod("00000000000000000000000000000000")
+                        .nakDost(false)
+                        .build())
+                .build();
+        FiskalizacijaJaxb.unmarshal(FiskalizacijaJaxb.marshal(sample), RacunZahtjev.class);
+
+        log.info("JAXB warm-up took {}", Duration.ofNanos(System.nanoTime() - start));
+    }
+}
@@ -0,0 +1,338 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.BrojRacunaType;
+import hr.leadtheway.wsdl.NacinPlacanjaType;
+import hr.leadtheway.wsdl.NaknadeType;
+import hr.leadtheway.wsdl.NapojnicaZahtjev;
+import hr.leadtheway.wsdl.OstaliPoreziType;
+import hr.leadtheway.wsdl.OznakaSlijednostiType;
+import hr.leadtheway.wsdl.PdvType;
+import hr.leadtheway.wsdl.PorezNaPotrosnjuType;
+import hr.leadtheway.wsdl.PorezType;
+import hr.leadtheway.wsdl.PromijeniNacPlacZahtjev;
+import hr.leadtheway.wsdl.RacunZahtjev;
+import hr.leadtheway.wsdl.ZaglavljeType;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static hr.leadtheway.fiskalizacija.FiskalizacijaJaxb.NAMESPACE;
+
+/**
+ * Writes the hot request types as UTF-8 XML straight into a reusable buffer, without JAXB.
+ * The output is the same document JAXB produces (same prefixes, element order and escaping),
+ * so it canonicalizes, and therefore signs, identically.
+ * <p>
+ * Not thread-safe: keep one per thread and call one of the {@code write} methods per request.
+ * The result is valid until the next {@code write}.
+ */
+public final class FiskalizacijaXmlWriter {
+
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>";
+    private static final String NAMESPACE_DECLARATIONS = " xmlns:xd=\"http://www.w3.org/2000/09/xmldsig#\" xmlns:tns=\"" + NAMESPACE + "\"";
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+
+    private byte[] buf = new byte[INITIAL_BUFFER_SIZE];
+    private int count;
+
+    public FiskalizacijaXmlWriter write(RacunZahtjev zahtjev) {
+        var racun = zahtjev.getRacun();
+
+        startDocument("RacunZahtjev", zahtjev.getId());
+        zaglavlje(zahtjev.getZaglavlje());
+        if (racun != null) {
+            start("Racun");
+            racunPocetak(racun.getOib(), racun.isUSustPdv(), racun.getDatVrijeme(), racun.getOznSlijed(), racun.getBrRac());
+            porezi(racun.getPdv(), racun.getPnp(), racun.getOstaliPor());
+            iznosi(racun.getIznosOslobPdv(), racun.getIznosMarza(), racun.getIznosNePodlOpor(), racun.getNaknade(), racun.getIznosUkupno());
+            racunKraj(racun.getNacinPlac(), racun.getOibOper(), racun.getZastKod(), racun.isNakDost(), racun.getParagonBrRac(), racun.getSpecNamj());
+            end("Racun");
+        }
+        end("RacunZahtjev");
+        return this;
+    }
+
+    public FiskalizacijaXmlWriter write(NapojnicaZahtjev zahtjev) {
+        var racun = zahtjev.getRacun();
+
+        startDocument("NapojnicaZahtjev", zahtjev.getId());
+        zaglavlje(zahtjev.getZaglavlje());
+        if (racun != null) {
+            start("Racun");
+            racunPocetak(racun.getOib(), racun.isUSustPdv(), racun.getDatVrijeme(), racun.getOznSlijed(), racun.getBrRac());
+            porezi(racun.getPdv(), racun.getPnp(), racun.getOstaliPor());
+            iznosi(racun.getIznosOslobPdv(), racun.getIznosMarza(), racun.getIznosNePodlOpor(), racun.getNaknade(), racun.getIznosUkupno());
+            racunKraj(racun.getNacinPlac(), racun.getOibOper(), racun.getZastKod(), racun.isNakDost(), racun.getParagonBrRac(), racun.getSpecNamj());
+            var pd = racun.getPrateciDokument();
+            if (pd != null) {
+                prateciDokument(pd.getJirPD(), pd.getZastKodPD());
+            }
+            var napojnica = racun.getNapojnica();
+            if (napojnica != null) {
+                start("Napojnica");
+                element("iznosNapojnice", napojnica.getIznosNapojnice());
+                element("nacinPlacanjaNapojnice", napojnica.getNacinPlacanjaNapojnice());
+                end("Napojnica");
+            }
+            end("Racun");
+        }
+        end("NapojnicaZahtjev");
+        return this;
+    }
+
+    public FiskalizacijaXmlWriter write(PromijeniNacPlacZahtjev zahtjev) {
+        var racun = zahtjev.getRacun();
+
+        startDocument("PromijeniNacPlacZahtjev", zahtjev.getId());
+        zaglavlje(zahtjev.getZaglavlje());
+        if (racun != null) {
+            start("Racun");
+            racunPocetak(racun.getOib(), racun.isUSustPdv(), racun.getDatVrijeme(), racun.getOznSlijed(), racun.getBrRac());
+            porezi(racun.getPdv(), racun.getPnp(), racun.getOstaliPor());
+            iznosi(racun.getIznosOslobPdv(), racun.getIznosMarza(), racun.getIznosNePodlOpor(), racun.getNaknade(), racun.getIznosUkupno());
+            racunKraj(racun.getNacinPlac(), racun.getOibOper(), racun.getZastKod(), racun.isNakDost(), racun.getParagonBrRac(), racun.getSpecNamj());
+            var pd = racun.getPrateciDokument();
+            if (pd != null) {
+                prateciDokument(pd.getJirPD(), pd.getZastKodPD());
+            }
+            element("PromijenjeniNacinPlac", racun.getPromijenjeniNacinPlac());
+            end("Racun");
+        }
+        end("PromijeniNacPlacZahtjev");
+        return this;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    public InputStream toInputStream() {
+        return new ByteArrayInputStream(buf, 0, count);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, count);
+    }
+
+    /* ────────── schema ────────── */
+
+    private void zaglavlje(ZaglavljeType zaglavlje) {
+        if (zaglavlje == null) {
+            return;
+        }
+        start("Zaglavlje");
+        element("IdPoruke", zaglavlje.getIdPoruke());
+        element("DatumVrijeme", zaglavlje.getDatumVrijeme());
+        end("Zaglavlje");
+    }
+
+    private void racunPocetak(String oib, boolean uSustPdv, String datVrijeme, OznakaSlijednostiType oznSlijed, BrojRacunaType brRac) {
+        element("Oib", oib);
+        element("USustPdv", uSustPdv);
+        element("DatVrijeme", datVrijeme);
+        if (oznSlijed != null) {
+            element("OznSlijed", oznSlijed.value());
+        }
+        if (brRac != null) {
+            start("BrRac");
+            element("BrOznRac", brRac.getBrOznRac());
+            element("OznPosPr", brRac.getOznPosPr());
+            element("OznNapUr", brRac.getOznNapUr());
+            end("BrRac");
+        }
+    }
+
+    private void porezi(PdvType pdv, PorezNaPotrosnjuType pnp, OstaliPoreziType ostaliPor) {
+        if (pdv != null) {
+            start("Pdv");
+            porezi(pdv.getPorez());
+            end("Pdv");
+        }
+        if (pnp != null) {
+            start("Pnp");
+            porezi(pnp.getPorez());
+            end("Pnp");
+        }
+        if (ostaliPor != null) {
+            start("OstaliPor");
+            for (var porez : ostaliPor.getPorez()) {
+                start("Porez");
+                element("Naziv", porez.getNaziv());
+                element("Stopa", porez.getStopa());
+                element("Osnovica", porez.getOsnovica());
+                element("Iznos", porez.getIznos());
+                end("Porez");
+            }
+            end("OstaliPor");
+        }
+    }
+
+    private void porezi(List<PorezType> porezi) {
+        for (var porez : porezi) {
+            start("Porez");
+            element("Stopa", porez.getStopa());
+            element("Osnovica", porez.getOsnovica());
+            element("Iznos", porez.getIznos());
+            end("Porez");
+        }
+    }
+
+    private void iznosi(String iznosOslobPdv, String iznosMarza, String iznosNePodlOpor, NaknadeType naknade, String iznosUkupno) {
+        element("IznosOslobPdv", iznosOslobPdv);
+        element("IznosMarza", iznosMarza);
+        element("IznosNePodlOpor", iznosNePodlOpor);
+        if (naknade != null) {
+            start("Naknade");
+            for (var naknada : naknade.getNaknada()) {
+                start("Naknada");
+                element("NazivN", naknada.getNazivN());
+                element("IznosN", naknada.getIznosN());
+                end("Naknada");
+            }
+            end("Naknade");
+        }
+        element("IznosUkupno", iznosUkupno);
+    }
+
+    private void racunKraj(NacinPlacanjaType nacinPlac, String oibOper, String zastKod, boolean nakDost, String paragonBrRac, String specNamj) {
+        element("NacinPlac", nacinPlac);
+        element("OibOper", oibOper);
+        element("ZastKod", zastKod);
+        element("NakDost", nakDost);
+        element("ParagonBrRac", paragonBrRac);
+        element("SpecNamj", specNamj);
+    }
+
+    private void prateciDokument(String jirPD, String zastKodPD) {
+        start("PrateciDokument");
+        element("JirPD", jirPD);
+        element("ZastKodPD", zastKodPD);
+        end("PrateciDokument");
+    }
+
+    /* ────────── output ────────── */
+
+    private void startDocument(String root, String id) {
+        count = 0;
+        ascii(XML_DECLARATION);
+        ascii("<tns:");
+        ascii(root);
+        ascii(NAMESPACE_DECLARATIONS);
+        if (id != null) {
+            ascii(" Id=\"");
+            escaped(id, true);
+            put('"');
+        }
+        put('>');
+    }
+
+    private void start(String name) {
+        ascii("<tns:");
+        ascii(name);
+        put('>');
+    }
+
+    private void end(String name) {
+        ascii("</tns:");
+        ascii(name);
+        put('>');
+    }
+
+    private void element(String name, String value) {
+        if (value == null) {
+            return;
+        }
+        start(name);
+        escaped(value, false);
+        end(name);
+    }
+
+    private void element(String name, boolean value) {
+        start(name);
+        ascii(value ? "true" : "false");
+        end(name);
+    }
+
+    private void element(String name, NacinPlacanjaType value) {
+        if (value != null) {
+            element(name, value.value());
+        }
+    }
+
+    private void ascii(String s) {
+        var length = s.length();
+        ensureCapacity(length);
+        for (var i = 0; i < length; i++) {
+            buf[count++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void escaped(String s, boolean attribute) {
+        var length = s.length();
+        // worst case is a 4-byte sequence per surrogate pair, or "&quot;" per character
+        ensureCapacity(length * 6);
+        for (var i = 0; i < length; i++) {
+            var c = s.charAt(i);
+            switch (c) {
+                case '&' -> copy("&amp;");
+                case '<' -> copy("&lt;");
+                case '>' -> copy("&gt;");
+                case '"' -> {
+                    if (attribute) {
+                        copy("&quot;");
+                    } else {
+                        buf[count++] = '"';
+                    }
+                }
+                default -> {
+                    if (c < 0x80) {
+                        buf[count++] = (byte) c;
+                    } else if (c < 0x800) {
+                        buf[count++] = (byte) (0xC0 | c >> 6);
+                        buf[count++] = (byte) (0x80 | c & 0x3F);
+                    } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        var cp = Character.toCodePoint(c, s.charAt(++i));
+                        buf[count++] = (byte) (0xF0 | cp >> 18);
+                        buf[count++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                        buf[count++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                        buf[count++] = (byte) (0x80 | cp & 0x3F);
+                    } else if (Character.isSurrogate(c)) {
+                        throw new IllegalArgumentException("Unpaired surrogate in " + s);
+                    } else {
+                        buf[count++] = (byte) (0xE0 | c >> 12);
+                        buf[count++] = (byte) (0x80 | c >> 6 & 0x3F);
+                        buf[count++] = (byte) (0x80 | c & 0x3F);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Only for the entity strings, the capacity is already ensured by {@link #escaped}.
+     */
+    private void copy(String entity) {
+        for (var i = 0; i < entity.length(); i++) {
+            buf[count++] = (byte) entity.charAt(i);
+        }
+    }
+
+    private void put(char c) {
+        ensureCapacity(1);
+        buf[count++] = (byte) c;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (count + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + extra));
+        }
+    }
+}
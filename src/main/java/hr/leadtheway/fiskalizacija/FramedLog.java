@@ -0,0 +1,206 @@
+package hr.leadtheway.fiskalizacija;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.zip.CRC32C;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * The file under {@link OfflineJournal} and {@link JirIndex}: records appended one after the
+ * other, each framed as {@code int length | int crc | body} with a CRC32C of the body.
+ * <p>
+ * Opening the file hands every intact record to the owner in order. A torn record at the end
+ * (crash during an append) is cut off. Compaction writes the records the owner still needs to
+ * a sibling file and moves it over the log atomically. An append that fails is cut off again,
+ * so that the records appended after it are not lost behind a torn one on the next open. Not
+ * thread-safe, the owners lock.
+ */
+@Slf4j
+final class FramedLog implements Closeable {
+
+    static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final boolean fsync;
+    private final int maxRecordSize;
+    private final UnaryOperator<FileChannel> channels;
+    private FileChannel channel;
+    // set when a failed append could not be cut off, appending after it would lose the records
+    private Exception broken;
+
+    private FramedLog(Path file, boolean fsync, int maxRecordSize, UnaryOperator<FileChannel> channels) {
+        this.file = file;
+        this.fsync = fsync;
+        this.maxRecordSize = maxRecordSize;
+        this.channels = channels;
+    }
+
+    /**
+     * Opens or creates {@code file} and passes the body of every record in it to {@code replay}.
+     */
+    static FramedLog open(Path file, boolean fsync, int maxRecordSize, Consumer<ByteBuffer> replay) throws IOException {
+        return open(file, fsync, maxRecordSize, replay, UnaryOperator.identity());
+    }
+
+    /**
+     * Same as {@link #open(Path, boolean, int, Consumer)}, appending through the channel
+     * {@code channels} wraps around the file's, e.g. one that fails in tests.
+     */
+    static FramedLog open(Path file, boolean fsync, int maxRecordSize, Consumer<ByteBuffer> replay, UnaryOperator<FileChannel> channels) throws IOException {
+        var parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        var framedLog = new FramedLog(file, fsync, maxRecordSize, channels);
+        framedLog.channel = channels.apply(FileChannel.open(file, CREATE, READ, WRITE));
+        framedLog.replay(replay);
+        return framedLog;
+    }
+
+    Path file() {
+        return file;
+    }
+
+    /**
+     * Appends the remaining bytes of {@code body} as one record, forced to disk when the log
+     * was opened with {@code fsync}.
+     */
+    void append(ByteBuffer body) throws IOException {
+        if (broken != null) {
+            throw new IOException("Cannot append to " + file + " after a failed write, it has to be reopened", broken);
+        }
+
+        var end = channel.position();
+        try {
+            writeTo(channel, body);
+            if (fsync) {
+                channel.force(false);
+            }
+        } catch (IOException | RuntimeException ex) {
+            rollBack(end, ex);
+            throw ex;
+        }
+    }
+
+    long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Replaces the log with the records {@code records} writes.
+     */
+    void rewrite(Rewrite records) throws IOException {
+        var compacted = file.resolveSibling(file.getFileName() + ".compact");
+        try (var out = FileChannel.open(compacted, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            records.writeTo(body -> writeTo(out, body));
+            out.force(true);
+        }
+
+        channel.close();
+        Files.move(compacted, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        channel = channels.apply(FileChannel.open(file, READ, WRITE));
+        channel.position(channel.size());
+        broken = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @FunctionalInterface
+    interface Rewrite {
+        void writeTo(RecordOutput out) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface RecordOutput {
+        void write(ByteBuffer body) throws IOException;
+    }
+
+    /* ────────── internals ────────── */
+
+    private void writeTo(FileChannel out, ByteBuffer body) throws IOException {
+        var length = body.remaining();
+        if (length > maxRecordSize) {
+            throw new IllegalArgumentException("Record of " + length + " bytes is larger than " + maxRecordSize);
+        }
+
+        var crc = new CRC32C();
+        crc.update(body.duplicate());
+        var header = ByteBuffer.allocate(HEADER_SIZE).putInt(length).putInt((int) crc.getValue()).flip();
+
+        var record = new ByteBuffer[]{header, body};
+        while (body.hasRemaining() || header.hasRemaining()) {
+            out.write(record);
+        }
+    }
+
+    private void rollBack(long end, Exception failure) {
+        try {
+            channel.truncate(end);
+            channel.position(end);
+        } catch (IOException ex) {
+            failure.addSuppressed(ex);
+            broken = failure;
+        }
+    }
+
+    private void replay(Consumer<ByteBuffer> replay) throws IOException {
+        var size = channel.size();
+        var position = 0L;
+        var header = ByteBuffer.allocate(HEADER_SIZE);
+        var body = ByteBuffer.allocate(Math.min(READ_BUFFER_SIZE, maxRecordSize));
+
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            var length = header.getInt();
+            var expectedCrc = header.getInt();
+            if (length < 0 || length > maxRecordSize || position + HEADER_SIZE + length > size) {
+                break;
+            }
+
+            if (body.capacity() < length) {
+                body = ByteBuffer.allocate(length);
+            }
+            body.clear().limit(length);
+            while (body.hasRemaining() && channel.read(body, position + HEADER_SIZE + body.position()) > 0) {
+                // keep reading until the record is complete
+            }
+
+            var crc = new CRC32C();
+            crc.update(body.array(), 0, length);
+            if ((int) crc.getValue() != expectedCrc) {
+                break;
+            }
+
+            body.flip();
+            replay.accept(body);
+            position += HEADER_SIZE + length;
+        }
+
+        if (position < size) {
+            log.warn("Truncating {} at {} of {} bytes, the tail is incomplete", file, position, size);
+            channel.truncate(position);
+        }
+        channel.position(position);
+    }
+}
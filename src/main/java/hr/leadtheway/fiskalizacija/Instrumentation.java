@@ -0,0 +1,52 @@
+package hr.leadtheway.fiskalizacija;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+
+/**
+ * Runs a stage inside an {@link Observation}: a timer, and a span when tracing is on the classpath.
+ * Every observation is tagged with the operation and its outcome.
+ */
+final class Instrumentation {
+
+    static final String ZKI = "fiskalizacija.zki";
+    static final String SIGNATURE = "fiskalizacija.signature";
+    static final String CIS = "fiskalizacija.cis";
+    static final String PDF = "fiskalizacija.pdf";
+
+    private static final String OPERATION = "operation";
+    private static final String OUTCOME = "outcome";
+
+    private Instrumentation() {
+    }
+
+    static <T, E1 extends Exception, E2 extends Exception> T observe(
+            ObservationRegistry registry,
+            String name,
+            String operation,
+            Stage<T, E1, E2> stage
+    ) throws E1, E2 {
+        var observation = Observation.createNotStarted(name, registry)
+                .lowCardinalityKeyValue(OPERATION, operation)
+                .start();
+        try (var ignored = observation.openScope()) {
+            var result = stage.run();
+            observation.lowCardinalityKeyValue(OUTCOME, "success");
+            return result;
+        } catch (Throwable ex) {
+            observation.lowCardinalityKeyValue(OUTCOME, "failure");
+            observation.error(ex);
+            throw ex;
+        } finally {
+            observation.stop();
+        }
+    }
+
+    /**
+     * A stage that throws one checked exception leaves {@code E2} inferred as {@link RuntimeException}.
+     */
+    @FunctionalInterface
+    interface Stage<T, E1 extends Exception, E2 extends Exception> {
+        T run() throws E1, E2;
+    }
+}
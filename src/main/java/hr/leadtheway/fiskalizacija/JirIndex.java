@@ -0,0 +1,133 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.RacunType;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The JIRs of the most recent receipts, by ZKI and invoice number. The entries live in a
+ * bounded LRU map and every new one is appended to a file, which is replayed on startup so
+ * retries still find their JIR after a restart.
+ * <p>
+ * Record layout: the key fields and the JIR as length-prefixed UTF-8, framed and checked by
+ * {@link FramedLog}. The file is rewritten with the entries in memory once it holds twice as
+ * many records.
+ */
+@Slf4j
+public class JirIndex implements Closeable {
+
+    private static final int MAX_RECORD_SIZE = 4 * 1024;
+
+    private final int capacity;
+    private final LinkedHashMap<Key, String> entries;
+    private FramedLog framedLog;
+    private int records;
+
+    private JirIndex(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+                return size() > JirIndex.this.capacity;
+            }
+        };
+    }
+
+    public static JirIndex open(Path file, boolean fsync, int capacity) throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        var index = new JirIndex(capacity);
+        index.framedLog = FramedLog.open(file, fsync, MAX_RECORD_SIZE, index::apply);
+        log.info("Opened {} with {} JIR(s)", file, index.entries.size());
+        return index;
+    }
+
+    public synchronized String get(Key key) {
+        return entries.get(key);
+    }
+
+    public synchronized void put(Key key, String jir) throws IOException {
+        if (jir.equals(entries.put(key, jir))) {
+            return;
+        }
+        framedLog.append(record(key, jir));
+        if (++records >= 2 * capacity) {
+            compact();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        framedLog.close();
+    }
+
+    /**
+     * Identifies a receipt across retries: the ZKI alone is enough in practice, the invoice number
+     * guards against a till that reuses a ZKI after a bug in its own numbering.
+     */
+    public record Key(String zastKod, String brOznRac, String oznPosPr, String oznNapUr) {
+
+        public static Key of(RacunType racun) {
+            var brRac = racun.getBrRac();
+            return new Key(racun.getZastKod(), brRac.getBrOznRac(), brRac.getOznPosPr(), brRac.getOznNapUr());
+        }
+    }
+
+    /* ────────── internals ────────── */
+
+    private void compact() throws IOException {
+        framedLog.rewrite(out -> {
+            for (var entry : entries.entrySet()) {
+                out.write(record(entry.getKey(), entry.getValue()));
+            }
+        });
+        records = entries.size();
+    }
+
+    private static ByteBuffer record(Key key, String jir) {
+        var fields = new byte[][]{
+                key.zastKod().getBytes(UTF_8),
+                key.brOznRac().getBytes(UTF_8),
+                key.oznPosPr().getBytes(UTF_8),
+                key.oznNapUr().getBytes(UTF_8),
+                jir.getBytes(UTF_8)
+        };
+        var length = 0;
+        for (var field : fields) {
+            length += Short.BYTES + field.length;
+        }
+        if (length > MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Entry for " + key + " is too large");
+        }
+
+        var record = ByteBuffer.allocate(length);
+        for (var field : fields) {
+            record.putShort((short) field.length).put(field);
+        }
+        return record.flip();
+    }
+
+    private void apply(ByteBuffer body) {
+        entries.put(new Key(string(body), string(body), string(body), string(body)), string(body));
+        records++;
+    }
+
+    private static String string(ByteBuffer body) {
+        var bytes = new byte[body.getShort()];
+        body.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -0,0 +1,219 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.FiskalizacijaPortType;
+import hr.leadtheway.wsdl.RacunOdgovor;
+import hr.leadtheway.wsdl.RacunZahtjev;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.xml.ws.WebServiceException;
+import jakarta.xml.ws.soap.SOAPFaultException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Delivers journaled receipts to CIS. Each one is resent with {@code NakDost} set and a new
+ * message header; when CIS cannot be reached the delivery is retried with exponential backoff
+ * and at most {@code parallelism} deliveries run at once. A receipt CIS refuses, or one that
+ * cannot be sent at all, is parked in the journal as rejected.
+ */
+@Slf4j
+@Service
+public class OfflineDispatcher {
+
+    private static final DateTimeFormatter DATUM_VRIJEME_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy'T'HH:mm:ss");
+
+    private final FiskalizacijaPortType port;
+    private final OfflineJournal journal;
+    private final Duration pollInterval;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    // bytes of settled records that make a compaction worth it
+    private final long compactThreshold;
+
+    private final Semaphore permits;
+    private final Map<Long, Attempt> attempts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("offline-dispatcher").daemon().factory());
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public OfflineDispatcher(
+            FiskalizacijaPortType fiskalizacijaPort,
+            OfflineJournal journal,
+            @Value("${fina.offline.dispatcher.parallelism}") int parallelism,
+            @Value("${fina.offline.dispatcher.poll-interval}") Duration pollInterval,
+            @Value("${fina.offline.dispatcher.initial-backoff}") Duration initialBackoff,
+            @Value("${fina.offline.dispatcher.max-backoff}") Duration maxBackoff,
+            @Value("${fina.offline.compact-threshold}") DataSize compactThreshold
+    ) {
+        this.port = fiskalizacijaPort;
+        this.journal = journal;
+        this.pollInterval = pollInterval;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.compactThreshold = compactThreshold.toBytes();
+        this.permits = new Semaphore(parallelism);
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::dispatch, 0, pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        scheduler.shutdownNow();
+        executor.shutdown();
+    }
+
+    /**
+     * Starts a delivery round right away instead of waiting for the next poll.
+     */
+    public void wakeUp() {
+        if (!scheduler.isShutdown()) {
+            scheduler.execute(this::dispatch);
+        }
+    }
+
+    private void dispatch() {
+        try {
+            var now = System.nanoTime();
+            var pending = journal.pending();
+            attempts.keySet().retainAll(pending.stream().map(OfflineJournal.Entry::seq).collect(Collectors.toSet()));
+
+            for (var entry : pending) {
+                var attempt = attempts.computeIfAbsent(entry.seq(), seq -> new Attempt(now));
+                if (attempt.notBefore - now > 0) {
+                    continue;
+                }
+                if (!permits.tryAcquire()) {
+                    break;
+                }
+                // the live call still holds a fresh entry, and a delivery may still run from the last round
+                if (!journal.claim(entry.seq())) {
+                    permits.release();
+                    continue;
+                }
+                executor.execute(() -> {
+                    try {
+                        deliver(entry, attempt);
+                    } finally {
+                        journal.release(entry.seq());
+                        permits.release();
+                    }
+                });
+            }
+
+            if (journal.reclaimable() > compactThreshold) {
+                journal.compact();
+            }
+        } catch (Exception ex) {
+            log.error("Offline dispatch round failed", ex);
+        }
+    }
+
+    /**
+     * {@code true} when the request most likely never reached CIS: the connection failed or
+     * timed out, or no port was free. Anything else will not go away by sending it again.
+     */
+    static boolean isUnreachable(RuntimeException ex) {
+        if (ex instanceof PortPool.BorrowTimeoutException) {
+            return true;
+        }
+        if (!(ex instanceof WebServiceException) || ex instanceof SOAPFaultException) {
+            return false;
+        }
+        for (var cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The errors CIS answered with, {@code null} when it accepted the receipt.
+     */
+    static String greske(RacunOdgovor odgovor) {
+        if (odgovor.getGreske() == null || odgovor.getGreske().getGreska().isEmpty()) {
+            return null;
+        }
+        return odgovor.getGreske().getGreska().stream()
+                .map(greska -> greska.getSifraGreske() + " " + greska.getPorukaGreske())
+                .collect(Collectors.joining(", "));
+    }
+
+    private void deliver(OfflineJournal.Entry entry, Attempt attempt) {
+        try {
+            var zahtjev = FiskalizacijaJaxb.unmarshal(entry.request(), RacunZahtjev.class);
+            zahtjev.getRacun().setNakDost(true);
+            zahtjev.getZaglavlje().setIdPoruke(UUID.randomUUID().toString());
+            zahtjev.getZaglavlje().setDatumVrijeme(LocalDateTime.now().format(DATUM_VRIJEME_FORMATTER));
+
+            var odgovor = port.racuni(zahtjev);
+            var greske = greske(odgovor);
+            if (greske != null) {
+                log.error("CIS rejected journaled receipt {} ({}), it needs manual handling", entry.zastKod(), greske);
+                settle(entry, true);
+                return;
+            }
+            log.info("Delivered receipt {} after {} retr(ies), JIR {}", entry.zastKod(), attempt.failures, odgovor.getJir());
+            settle(entry, false);
+        } catch (RuntimeException ex) {
+            if (!isUnreachable(ex)) {
+                log.error("Journaled receipt {} cannot be delivered, it needs manual handling", entry.zastKod(), ex);
+                settle(entry, true);
+                return;
+            }
+            attempt.failures++;
+            var backoff = backoff(attempt.failures);
+            attempt.notBefore = System.nanoTime() + backoff.toNanos();
+            log.warn("Delivery of receipt {} failed ({}), retrying in {}", entry.zastKod(), ex.toString(), backoff);
+        }
+    }
+
+    private void settle(OfflineJournal.Entry entry, boolean rejected) {
+        try {
+            if (rejected) {
+                journal.markRejected(entry.seq());
+            } else {
+                journal.markDone(entry.seq());
+            }
+            attempts.remove(entry.seq());
+        } catch (IOException ex) {
+            log.error("Cannot settle journal entry {}", entry.seq(), ex);
+        }
+    }
+
+    private Duration backoff(int failures) {
+        var exponent = Math.min(failures - 1, 20);
+        var millis = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << exponent);
+        // spread retries so that tills coming back online do not all hit CIS at once
+        return Duration.ofMillis(millis / 2 + ThreadLocalRandom.current().nextLong(millis / 2 + 1));
+    }
+
+    private static final class Attempt {
+        private volatile long notBefore;
+        private volatile int failures;
+
+        private Attempt(long notBefore) {
+            this.notBefore = notBefore;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.FiskalizacijaPortType;
+import hr.leadtheway.wsdl.RacunOdgovor;
+import hr.leadtheway.wsdl.RacunZahtjev;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Store-and-forward submission of receipts. Every request is journaled before it is sent,
+ * so when CIS cannot be reached the receipt can still be issued with its ZKI and the
+ * {@link OfflineDispatcher} delivers it later.
+ */
+@Slf4j
+@Service
+public class OfflineFiskalizacijaService {
+
+    private final ThreadLocal<FiskalizacijaXmlWriter> xmlWriter = ThreadLocal.withInitial(FiskalizacijaXmlWriter::new);
+
+    private final FiskalizacijaPortType port;
+    private final OfflineJournal journal;
+    private final OfflineDispatcher dispatcher;
+
+    public OfflineFiskalizacijaService(FiskalizacijaPortType fiskalizacijaPort, OfflineJournal journal, OfflineDispatcher dispatcher) {
+        this.port = fiskalizacijaPort;
+        this.journal = journal;
+        this.dispatcher = dispatcher;
+    }
+
+    public Result racuni(RacunZahtjev zahtjev) {
+        var zastKod = zahtjev.getRacun().getZastKod();
+        long seq;
+        try {
+            seq = journal.append(zastKod, xmlWriter.get().write(zahtjev).toByteArray());
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot journal receipt " + zastKod, ex);
+        }
+
+        // the entry stays claimed until it is settled, the dispatcher leaves it alone until then
+        var queued = false;
+        try {
+            var odgovor = port.racuni(zahtjev);
+            var greske = OfflineDispatcher.greske(odgovor);
+            if (greske != null) {
+                // CIS answered, sending the same request again will not change the answer
+                log.warn("CIS rejected receipt {}: {}", zastKod, greske);
+                settle(seq, true);
+            } else {
+                settle(seq, false);
+            }
+            return new Result(zastKod, odgovor);
+        } catch (RuntimeException ex) {
+            if (!OfflineDispatcher.isUnreachable(ex)) {
+                log.error("Receipt {} was not accepted ({}), it is parked in the journal", zastKod, ex.toString());
+                settle(seq, true);
+                throw ex;
+            }
+            log.warn("CIS unavailable, receipt {} queued for later delivery: {}", zastKod, ex.toString());
+            queued = true;
+            return new Result(zastKod, null);
+        } finally {
+            journal.release(seq);
+            // only once released, a claim taken by the woken round must not be dropped by this call
+            if (queued) {
+                dispatcher.wakeUp();
+            }
+        }
+    }
+
+    private void settle(long seq, boolean rejected) {
+        try {
+            if (rejected) {
+                journal.markRejected(seq);
+            } else {
+                journal.markDone(seq);
+            }
+        } catch (IOException ex) {
+            // after a restart the dispatcher resends it with NakDost, which CIS answers the same way
+            log.error("Cannot settle journal entry {}", seq, ex);
+        }
+    }
+
+    /**
+     * {@code odgovor} is {@code null} while the receipt waits in the journal, it carries
+     * {@code Greske} when CIS rejected the receipt.
+     */
+    public record Result(String zastKod, RacunOdgovor odgovor) {
+
+        public boolean pending() {
+            return odgovor == null;
+        }
+
+        public String jir() {
+            return odgovor == null ? null : odgovor.getJir();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package hr.leadtheway.fiskalizacija;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Append-only log of requests that still have to reach CIS. A request is appended as
+ * {@code PENDING} before it is sent and a {@code DONE} record follows once CIS accepted it.
+ * A request CIS refused, or one that cannot be sent at all, gets a {@code REJECTED} record
+ * instead and stays in the journal for manual handling.
+ * <p>
+ * An entry being sent is claimed, so that the live call and the {@link OfflineDispatcher}
+ * never send the same request at once. Claims are not journaled, after a restart nothing is
+ * in flight.
+ * <p>
+ * Record layout: {@code byte type | long seq | payload}, framed and checked by {@link FramedLog}.
+ */
+@Slf4j
+public class OfflineJournal implements Closeable {
+
+    private static final byte PENDING = 1;
+    private static final byte DONE = 2;
+    private static final byte REJECTED = 3;
+    private static final int HEADER_SIZE = FramedLog.HEADER_SIZE;
+    private static final int BODY_PREFIX_SIZE = Byte.BYTES + Long.BYTES;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    private final Path file;
+    private final Map<Long, Entry> pending = new LinkedHashMap<>();
+    private final Map<Long, Entry> rejected = new LinkedHashMap<>();
+    private final Set<Long> inFlight = new HashSet<>();
+    // bytes of the records a compaction would keep
+    private long liveSize;
+    private FramedLog framedLog;
+    private long nextSeq = 1;
+
+    private OfflineJournal(Path file) {
+        this.file = file;
+    }
+
+    public static OfflineJournal open(Path file, boolean fsync) throws IOException {
+        var journal = new OfflineJournal(file);
+        journal.framedLog = FramedLog.open(file, fsync, MAX_RECORD_SIZE, journal::apply);
+        log.info("Opened {} with {} pending and {} rejected request(s)", file, journal.pending.size(), journal.rejected.size());
+        return journal;
+    }
+
+    /**
+     * Durably records a request and returns its sequence number. The entry starts out claimed by
+     * the caller, who is about to send it and has to {@link #release} it afterwards.
+     */
+    public synchronized long append(String zastKod, byte[] request) throws IOException {
+        var seq = nextSeq++;
+        var entry = new Entry(seq, zastKod, request);
+        framedLog.append(pendingRecord(entry));
+
+        pending.put(seq, entry);
+        inFlight.add(seq);
+        liveSize += recordSize(entry);
+        return seq;
+    }
+
+    /**
+     * Claims a pending entry for sending, {@code false} if it is settled or someone else is
+     * sending it.
+     */
+    public synchronized boolean claim(long seq) {
+        return pending.containsKey(seq) && inFlight.add(seq);
+    }
+
+    public synchronized void release(long seq) {
+        inFlight.remove(seq);
+    }
+
+    /**
+     * CIS accepted the request, or a rejected one was handled by hand.
+     */
+    public synchronized void markDone(long seq) throws IOException {
+        if (forget(seq)) {
+            framedLog.append(record(DONE, seq));
+        }
+    }
+
+    /**
+     * Parks a request that sending again will not help, it is kept until {@link #markDone}.
+     */
+    public synchronized void markRejected(long seq) throws IOException {
+        if (park(seq)) {
+            framedLog.append(record(REJECTED, seq));
+        }
+    }
+
+    public synchronized List<Entry> pending() {
+        return new ArrayList<>(pending.values());
+    }
+
+    public synchronized List<Entry> rejected() {
+        return new ArrayList<>(rejected.values());
+    }
+
+    public synchronized long size() throws IOException {
+        return framedLog.size();
+    }
+
+    /**
+     * Bytes that {@link #compact()} would free.
+     */
+    public synchronized long reclaimable() throws IOException {
+        return framedLog.size() - liveSize;
+    }
+
+    /**
+     * Rewrites the journal with only the pending and rejected records and swaps it in atomically.
+     */
+    public synchronized void compact() throws IOException {
+        var entries = new ArrayList<Entry>(pending.size() + rejected.size());
+        entries.addAll(rejected.values());
+        entries.addAll(pending.values());
+        entries.sort(Comparator.comparingLong(Entry::seq));
+
+        framedLog.rewrite(out -> {
+            for (var entry : entries) {
+                out.write(pendingRecord(entry));
+                if (rejected.containsKey(entry.seq())) {
+                    out.write(record(REJECTED, entry.seq()));
+                }
+            }
+        });
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        framedLog.close();
+    }
+
+    /* ────────── internals ────────── */
+
+    private boolean forget(long seq) {
+        var entry = pending.remove(seq);
+        if (entry == null && (entry = rejected.remove(seq)) != null) {
+            liveSize -= HEADER_SIZE + BODY_PREFIX_SIZE;
+        }
+        if (entry == null) {
+            return false;
+        }
+        liveSize -= recordSize(entry);
+        return true;
+    }
+
+    private boolean park(long seq) {
+        var entry = pending.remove(seq);
+        if (entry == null) {
+            return false;
+        }
+        rejected.put(seq, entry);
+        liveSize += HEADER_SIZE + BODY_PREFIX_SIZE;
+        return true;
+    }
+
+    private static ByteBuffer pendingRecord(Entry entry) {
+        var zki = entry.zastKod().getBytes(US_ASCII);
+        var record = ByteBuffer.allocate(BODY_PREFIX_SIZE + Short.BYTES + zki.length + entry.request().length);
+        record.put(PENDING).putLong(entry.seq());
+        return record.putShort((short) zki.length).put(zki).put(entry.request()).flip();
+    }
+
+    private static ByteBuffer record(byte type, long seq) {
+        return ByteBuffer.allocate(BODY_PREFIX_SIZE).put(type).putLong(seq).flip();
+    }
+
+    private static long recordSize(Entry entry) {
+        return HEADER_SIZE + BODY_PREFIX_SIZE + Short.BYTES + entry.zastKod().length() + entry.request().length;
+    }
+
+    private void apply(ByteBuffer body) {
+        var type = body.get();
+        var seq = body.getLong();
+        nextSeq = Math.max(nextSeq, seq + 1);
+
+        switch (type) {
+            case PENDING -> {
+                var zki = new byte[body.getShort()];
+                body.get(zki);
+                var request = new byte[body.remaining()];
+                body.get(request);
+                var entry = new Entry(seq, new String(zki, US_ASCII), request);
+                pending.put(seq, entry);
+                liveSize += recordSize(entry);
+            }
+            case DONE -> forget(seq);
+            case REJECTED -> park(seq);
+            default -> throw new IllegalStateException("Unknown record type " + type + " in " + file);
+        }
+    }
+
+    public record Entry(long seq, String zastKod, byte[] request) {
+    }
+}
@@ -0,0 +1,202 @@
+package hr.leadtheway.fiskalizacija;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Renders many receipts in parallel. A receipt that fails is recorded in the report and
+ * does not stop the rest of the batch.
+ * <p>
+ * The progress listener hears about every {@code progressInterval}-th finished receipt and
+ * once more at the end, never from two threads at once.
+ */
+@Slf4j
+@Service
+public class PdfReceiptBatchRenderer {
+
+    private static final int INITIAL_PDF_BUFFER_SIZE = 64 * 1024;
+    // rendered and failed receipts share one AtomicLong, the low and the high 32 bits
+    private static final int FAILED_SHIFT = 32;
+    private static final long RENDERED = 1;
+    private static final long FAILED = 1L << FAILED_SHIFT;
+    private static final long RENDERED_MASK = FAILED - 1;
+
+    private final PdfReceiptGenerator pdfReceiptGenerator;
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final long progressInterval;
+
+    public PdfReceiptBatchRenderer(
+            PdfReceiptGenerator pdfReceiptGenerator,
+            @Value("${pdf.batch.executor}") String executorType,
+            @Value("${pdf.batch.parallelism}") int parallelism,
+            @Value("${pdf.batch.progress-interval}") long progressInterval
+    ) {
+        this.pdfReceiptGenerator = pdfReceiptGenerator;
+        this.parallelism = parallelism;
+        this.progressInterval = progressInterval;
+        this.executor = switch (executorType) {
+            case "virtual" -> Executors.newVirtualThreadPerTaskExecutor();
+            case "fork-join" -> new ForkJoinPool(parallelism);
+            default -> throw new IllegalArgumentException("Unsupported batch executor: " + executorType);
+        };
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Writes every receipt as its own file into {@code directory}.
+     */
+    public BatchReport renderToDirectory(Stream<Receipt> receipts,
+                                         Path directory,
+                                         Consumer<BatchProgress> progressListener) throws IOException, InterruptedException {
+        Files.createDirectories(directory);
+
+        return render(receipts, progressListener, receipt -> {
+            var target = directory.resolve(receipt.pdfFileName());
+            // unique, receipts of one batch may share a file name and render at the same time
+            var partial = Files.createTempFile(directory, receipt.pdfFileName() + ".", ".part");
+            try {
+                try (var out = Files.newOutputStream(partial)) {
+                    pdfReceiptGenerator.generatePdf(receipt, out);
+                }
+                Files.move(partial, target, ATOMIC_MOVE, REPLACE_EXISTING);
+            } catch (Exception ex) {
+                Files.deleteIfExists(partial);
+                throw ex;
+            }
+        });
+    }
+
+    /**
+     * Writes every receipt as an entry of a ZIP archive. {@code out} is finished but not closed.
+     */
+    public BatchReport renderToZip(Stream<Receipt> receipts,
+                                   OutputStream out,
+                                   Consumer<BatchProgress> progressListener) throws IOException, InterruptedException {
+        var zip = new ZipOutputStream(out);
+
+        var report = render(receipts, progressListener, receipt -> {
+            // rendering runs in parallel, only appending to the archive is serialized
+            var pdf = new ByteArrayOutputStream(INITIAL_PDF_BUFFER_SIZE);
+            pdfReceiptGenerator.generatePdf(receipt, pdf);
+            synchronized (zip) {
+                zip.putNextEntry(new ZipEntry(receipt.pdfFileName()));
+                pdf.writeTo(zip);
+                zip.closeEntry();
+            }
+        });
+
+        zip.finish();
+        return report;
+    }
+
+    private BatchReport render(Stream<Receipt> receipts,
+                               Consumer<BatchProgress> progressListener,
+                               ReceiptSink sink) throws InterruptedException {
+        var start = System.nanoTime();
+        var counts = new AtomicLong();
+        var progressLock = new Object();
+        var failures = Collections.synchronizedList(new ArrayList<BatchFailure>());
+        var permits = new Semaphore(parallelism);
+
+        var it = receipts.iterator();
+        while (it.hasNext()) {
+            var receipt = it.next();
+            permits.acquire();
+            try {
+                executor.execute(() -> {
+                    try {
+                        var rendered = true;
+                        try {
+                            sink.write(receipt);
+                        } catch (Exception ex) {
+                            log.warn("Rendering receipt {} failed", receipt.brojFakture(), ex);
+                            failures.add(new BatchFailure(receipt.brojFakture(), ex.toString()));
+                            rendered = false;
+                        }
+
+                        // one update, so exactly one receipt completes every interval
+                        var snapshot = counts.addAndGet(rendered ? RENDERED : FAILED);
+                        var progress = progress(snapshot, start);
+                        if ((progress.rendered() + progress.failed()) % progressInterval == 0) {
+                            synchronized (progressLock) {
+                                progressListener.accept(progress);
+                            }
+                        }
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                permits.release();
+                throw ex;
+            }
+        }
+
+        // wait for the tail of the batch
+        permits.acquire(parallelism);
+        permits.release(parallelism);
+
+        var progress = progress(counts.get(), start);
+        synchronized (progressLock) {
+            progressListener.accept(progress);
+        }
+        return new BatchReport(progress, List.copyOf(failures));
+    }
+
+    private static BatchProgress progress(long counts, long startNanos) {
+        return new BatchProgress(counts & RENDERED_MASK, counts >>> FAILED_SHIFT, elapsedSince(startNanos));
+    }
+
+    private static Duration elapsedSince(long startNanos) {
+        return Duration.ofNanos(System.nanoTime() - startNanos);
+    }
+
+    @FunctionalInterface
+    private interface ReceiptSink {
+        void write(Receipt receipt) throws Exception;
+    }
+
+    public record BatchProgress(long rendered, long failed, Duration elapsed) {
+
+        public double receiptsPerSecond() {
+            var seconds = elapsed.toNanos() / 1e9;
+            return seconds == 0 ? 0 : (rendered + failed) / seconds;
+        }
+    }
+
+    public record BatchFailure(String brojFakture, String error) {
+    }
+
+    public record BatchReport(BatchProgress progress, List<BatchFailure> failures) {
+    }
+}
@@ -0,0 +1,228 @@
+package hr.leadtheway.fiskalizacija;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.regex.Pattern;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Rendered receipt PDFs on disk, one file per JIR (or ZKI while a receipt has no JIR). The
+ * files together stay below {@code maxBytes}, the least recently served ones are deleted first.
+ * <p>
+ * A fiscalized receipt does not change, so an entry is never invalidated, and its ETag is a hash
+ * of the bytes, which {@link PdfReceiptGenerator} renders the same for the same receipt. A caller
+ * that renders from a request body still cannot trust the JIR alone, the rest of the body may
+ * differ; it looks an entry up together with the {@link #source} hash of what it was rendered from.
+ */
+@Slf4j
+public class PdfReceiptCache {
+
+    // a JIR is a UUID, a ZKI 32 hex digits; nothing else may become a file name
+    private static final Pattern KEY = Pattern.compile("[0-9a-fA-F-]{32,36}");
+    private static final String SUFFIX = ".pdf";
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private PdfReceiptCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Picks up the files of an earlier run, the oldest ones are the first to go.
+     */
+    public static PdfReceiptCache open(Path directory, long maxBytes) throws IOException {
+        Files.createDirectories(directory);
+        var cache = new PdfReceiptCache(directory, maxBytes);
+
+        try (var files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparing(PdfReceiptCache::lastModified))
+                    .forEach(file -> {
+                        var name = file.getFileName().toString();
+                        var key = name.substring(0, name.length() - SUFFIX.length());
+                        if (isKey(key)) {
+                            var size = size(file);
+                            cache.entries.put(key, new Entry(file, size, null, null));
+                            cache.totalBytes += size;
+                        }
+                    });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        cache.evict();
+
+        log.info("Opened receipt cache {} with {} PDF(s), {} bytes", directory, cache.entries.size(), cache.totalBytes);
+        return cache;
+    }
+
+    public static String key(Receipt receipt) {
+        return receipt.jir() != null && !receipt.jir().isBlank() ? receipt.jir() : receipt.zki();
+    }
+
+    public static boolean isKey(String key) {
+        return key != null && KEY.matcher(key).matches();
+    }
+
+    /**
+     * A hash of what a PDF is rendered from, e.g. the serialized receipt.
+     */
+    public static String source(byte[] content) {
+        return HEX.formatHex(sha256(content, content.length));
+    }
+
+    /**
+     * @return the cached PDF, the caller closes its stream; {@code null} when there is none
+     */
+    public Cached get(String key) throws IOException {
+        return get(key, null);
+    }
+
+    /**
+     * Same as {@link #get(String)}, but only a PDF rendered from {@code source}. Files of an earlier
+     * run have no source and do not match.
+     */
+    public Cached get(String key, String source) throws IOException {
+        if (!isKey(key)) {
+            return null;
+        }
+
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null || source != null && !source.equals(entry.source())) {
+            return null;
+        }
+
+        try {
+            if (entry.etag() == null) {
+                // a file found on startup gets its ETag when it is first served
+                var bytes = Files.readAllBytes(entry.file());
+                var etag = etag(bytes, bytes.length);
+                synchronized (this) {
+                    entries.replace(key, entry, new Entry(entry.file(), entry.size(), etag, entry.source()));
+                }
+                return new Cached(new ByteArrayInputStream(bytes), bytes.length, etag);
+            }
+            // an open file can still be read after eviction deleted it
+            return new Cached(Files.newInputStream(entry.file()), entry.size(), entry.etag());
+        } catch (NoSuchFileException ex) {
+            remove(key, entry);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the first {@code length} bytes of {@code pdf}, rendered from {@code source}, and returns
+     * their ETag.
+     */
+    public String put(String key, String source, byte[] pdf, int length) throws IOException {
+        if (!isKey(key)) {
+            throw new IllegalArgumentException("Not a JIR or ZKI: " + key);
+        }
+
+        var etag = etag(pdf, length);
+        var file = directory.resolve(key + SUFFIX);
+        var temp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            try (var out = Files.newOutputStream(temp)) {
+                out.write(pdf, 0, length);
+            }
+            Files.move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        synchronized (this) {
+            var previous = entries.put(key, new Entry(file, length, etag, source));
+            totalBytes += length - (previous == null ? 0 : previous.size());
+            evict();
+        }
+        return etag;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(entries.size(), totalBytes);
+    }
+
+    public record Cached(InputStream in, long size, String etag) {
+    }
+
+    public record Stats(int entries, long bytes) {
+    }
+
+    /* ────────── internals ────────── */
+
+    private record Entry(Path file, long size, String etag, String source) {
+    }
+
+    private void evict() {
+        var eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            var entry = eldest.next().getValue();
+            eldest.remove();
+            totalBytes -= entry.size();
+            try {
+                Files.deleteIfExists(entry.file());
+            } catch (IOException ex) {
+                log.warn("Cannot delete evicted receipt {}: {}", entry.file(), ex.toString());
+            }
+        }
+    }
+
+    private synchronized void remove(String key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            totalBytes -= entry.size();
+        }
+    }
+
+    private static String etag(byte[] pdf, int length) {
+        return '"' + HEX.formatHex(sha256(pdf, length), 0, 16) + '"';
+    }
+
+    private static byte[] sha256(byte[] bytes, int length) {
+        try {
+            var sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(bytes, 0, length);
+            return sha256.digest();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
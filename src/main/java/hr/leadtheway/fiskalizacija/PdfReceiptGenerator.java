@@ -2,10 +2,20 @@ package hr.leadtheway.fiskalizacija;
 
 import com.google.zxing.EncodeHintType;
 import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
 import hr.leadtheway.wsdl.BrojRacunaType;
 import hr.leadtheway.wsdl.NacinPlacanjaType;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PreDestroy;
 import lombok.Builder;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
@@ -15,35 +25,80 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import static com.google.zxing.BarcodeFormat.QR_CODE;
 import static com.google.zxing.EncodeHintType.ERROR_CORRECTION;
-import static com.google.zxing.client.j2se.MatrixToImageWriter.toBufferedImage;
 import static com.google.zxing.qrcode.decoder.ErrorCorrectionLevel.Q;
+import static hr.leadtheway.fiskalizacija.ReceiptText.BROJ_FAKTURE_LABEL;
+import static hr.leadtheway.fiskalizacija.ReceiptText.DATUM_IZDAVANJA_LABEL;
+import static hr.leadtheway.fiskalizacija.ReceiptText.EUR_SUFFIX;
+import static hr.leadtheway.fiskalizacija.ReceiptText.FOOTER_LINE1;
+import static hr.leadtheway.fiskalizacija.ReceiptText.FOOTER_LINE2;
+import static hr.leadtheway.fiskalizacija.ReceiptText.HEADER_NETO_IZNOS;
+import static hr.leadtheway.fiskalizacija.ReceiptText.HEADER_OPIS;
+import static hr.leadtheway.fiskalizacija.ReceiptText.JIR_LABEL;
+import static hr.leadtheway.fiskalizacija.ReceiptText.NACIN_PLACANJA_LABEL;
+import static hr.leadtheway.fiskalizacija.ReceiptText.PERCENT_SUFFIX;
+import static hr.leadtheway.fiskalizacija.ReceiptText.RACUN_IZDAO_LABEL;
+import static hr.leadtheway.fiskalizacija.ReceiptText.RACUN_TITLE;
+import static hr.leadtheway.fiskalizacija.ReceiptText.UKUPAN_IZNOS_POREZA_LABEL;
+import static hr.leadtheway.fiskalizacija.ReceiptText.UKUPAN_NETO_IZNOS_LABEL;
+import static hr.leadtheway.fiskalizacija.ReceiptText.UKUPAN_PLACANJE_IZNOS_LABEL;
+import static hr.leadtheway.fiskalizacija.ReceiptText.VRIJEME_IZDAVANJA_LABEL;
+import static hr.leadtheway.fiskalizacija.ReceiptText.ZKI_LABEL;
+import static hr.leadtheway.fiskalizacija.ReceiptText.nacinPlacanja;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.pdfbox.pdmodel.PDPageContentStream.AppendMode.APPEND;
 import static org.apache.pdfbox.pdmodel.common.PDRectangle.A4;
-import static org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject.createFromByteArray;
 
 @Service
 public final class PdfReceiptGenerator {
 
-    private final Resource regularFontFile;
-    private final Resource boldFontFile;
+    // parsed once and shared, every document embeds its own subset
+    private final TrueTypeFont regularFont;
+    private final TrueTypeFont boldFont;
+
+    // x positions of the centered static lines
+    private final float titleX;
+    private final float footerLine1X;
+    private final float footerLine2X;
+
+    private final ObservationRegistry observationRegistry;
 
     public PdfReceiptGenerator(
             @Value("${pdf.fonts.regular}") Resource regularFontFile,
-            @Value("${pdf.fonts.bold}") Resource boldFontFile
-    ) {
-        this.regularFontFile = regularFontFile;
-        this.boldFontFile = boldFontFile;
+            @Value("${pdf.fonts.bold}") Resource boldFontFile,
+            ObservationRegistry observationRegistry
+    ) throws IOException {
+        this.observationRegistry = observationRegistry;
+        this.regularFont = parseFont(regularFontFile);
+        this.boldFont = parseFont(boldFontFile);
+
+        try (var scratch = new PDDocument()) {
+            var font = PDType0Font.load(scratch, regularFont, true);
+            var fontBold = PDType0Font.load(scratch, boldFont, true);
+
+            this.titleX = centeredX(fontBold, TITLE_FONT_SIZE, RACUN_TITLE);
+            this.footerLine1X = centeredX(font, LEGAL_FONT_SIZE, FOOTER_LINE1);
+            this.footerLine2X = centeredX(font, LEGAL_FONT_SIZE, FOOTER_LINE2);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        regularFont.close();
+        boldFont.close();
     }
 
     /* ────────── string literals ────────── */
@@ -52,26 +107,12 @@ public final class PdfReceiptGenerator {
     private static final String ZKI_PARAM = "zki=";
     private static final String DATE_PARAM = "datv=";
     private static final String AMOUNT_PARAM = "izn=";
-    private static final String RACUN_TITLE = "Račun";
-    private static final String BROJ_FAKTURE_LABEL = "Broj fakture: ";
-    private static final String DATUM_IZDAVANJA_LABEL = "Datum izdavanja računa: ";
-    private static final String VRIJEME_IZDAVANJA_LABEL = "Vrijeme izdavanja računa: ";
-    private static final String NACIN_PLACANJA_LABEL = "Način plaćanja: ";
-    private static final String HEADER_OPIS = "Opis";
     private static final String HEADER_KOLICINA = "Količina";
     private static final String HEADER_POREZ = "Porez";
     private static final String HEADER_IZNOS_POREZA = "Iznos poreza";
-    private static final String HEADER_NETO_IZNOS = "Neto iznos";
-    private static final String UKUPAN_NETO_IZNOS_LABEL = "Ukupan neto iznos: ";
-    private static final String UKUPAN_PLACANJE_IZNOS_LABEL = "Ukupan iznos za plaćanje: ";
-    private static final String JIR_LABEL = "JIR: ";
-    private static final String ZKI_LABEL = "ZKI: ";
-    private static final String RACUN_IZDAO_LABEL = "Račun izdao: ";
-    private static final String FOOTER_LINE1 = "Izdao/la u ime dobavljača ..., obrt za usluge, vl. ...";
-    private static final String FOOTER_LINE2 = "Second footer line.";
-    private static final String QR_IMG_NAME = "qr";
-    private static final String PNG_FORMAT = "png";
-    private static final String EUR_SUFFIX = " EUR";
+    private static final String PRIJENOS_LABEL = "Prijenos";
+    private static final String DONOS_LABEL = "Donos";
+    private static final String NO_TAX = "-";
 
     private static final DateTimeFormatter DATE_FMT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
     private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm:ss");
@@ -90,6 +131,10 @@ public final class PdfReceiptGenerator {
     private static final float HORIZONTAL_RULE_OFFSET = 4f;
     private static final float AFTER_TABLE_GAP = 26f;
 
+    /* ────────── memory ────────── */
+    // content streams of long documents spill over to a temp file beyond this
+    private static final long MAX_MAIN_MEMORY_BYTES = 8L * 1024 * 1024;
+
     /* ────────── font sizes & line spacing ────────── */
     private static final int TITLE_FONT_SIZE = 16;
     private static final int DEFAULT_FONT_SIZE = 11;
@@ -98,15 +143,24 @@ public final class PdfReceiptGenerator {
     private static final float TOTALS_LINE_SPACING = 16f;
     private static final float LEGAL_NOTICE_FIRST_LINE_GAP = 24f;
     private static final float LEGAL_NOTICE_LINE_GAP = 14f;
+    // totals and legal notice, they have to fit above the QR code on the last page
+    private static final float CLOSING_BLOCK_HEIGHT = 3 * TOTALS_LINE_SPACING + TOTALS_BLOCK_GAP
+            + LEGAL_NOTICE_FIRST_LINE_GAP + 2 * LEGAL_NOTICE_LINE_GAP + LEGAL_FONT_SIZE;
 
     /* ────────── QR / footer ────────── */
     private static final int QR_SIZE = 160;
     private static final float QR_Y = 120f;
     private static final int QR_HINT_MARGIN = 0;
+    private static final int QR_DATA_CAPACITY = 128;
+    private static final Map<EncodeHintType, Object> QR_HINTS = Map.of(
+            EncodeHintType.MARGIN, QR_HINT_MARGIN,
+            ERROR_CORRECTION, Q
+    );
     private static final float FOOTER_LINE1_GAP = 18f;
     private static final float FOOTER_LINE2_GAP = 32f;
 
     private static final float[] TABLE_COL_WIDTHS = {140f, 60f, 70f, 100f, 100f};
+    private static final String[] TABLE_HEADER = {HEADER_OPIS, HEADER_KOLICINA, HEADER_POREZ, HEADER_IZNOS_POREZA, HEADER_NETO_IZNOS};
 
     public byte[] generatePdf(
             List<String> supplierAddressLines,
@@ -114,66 +168,145 @@ public final class PdfReceiptGenerator {
             LocalDateTime datumIVrijeme,
             NacinPlacanjaType nacinPlacanja,
             List<InvoiceItem> items,
-            String iznosUkupno,
+            Amount iznosUkupno,
             String legalNotice,
             String jir,
             String zki,
             String operatorCode
     ) throws IOException, WriterException {
 
-        try (var doc = new PDDocument()) {
-            var page = new PDPage(A4);
-            doc.addPage(page);
+        try (var baos = new ByteArrayOutputStream()) {
+            generatePdf(supplierAddressLines, brojRacuna, datumIVrijeme, nacinPlacanja, items.iterator(),
+                    iznosUkupno, legalNotice, jir, zki, operatorCode, baos);
+            return baos.toByteArray();
+        }
+    }
+
+    public void generatePdf(Receipt receipt, OutputStream out) throws IOException, WriterException {
+        generatePdf(
+                receipt.supplierAddressLines(),
+                receipt.brojRacuna(),
+                receipt.datumIVrijeme(),
+                receipt.nacinPlacanja(),
+                receipt.items().iterator(),
+                receipt.iznosUkupno(),
+                receipt.legalNotice(),
+                receipt.jir(),
+                receipt.zki(),
+                receipt.operatorCode(),
+                out
+        );
+    }
+
+    /**
+     * Writes the document straight to {@code out}. The stream is flushed but not closed.
+     * <p>
+     * Items are consumed lazily (pass {@code stream.iterator()} for a {@code Stream}) and the table
+     * continues on as many pages as needed.
+     * <p>
+     * Identical input gives identical bytes, so a rendered receipt can be cached and served again.
+     */
+    public void generatePdf(
+            List<String> supplierAddressLines,
+            BrojRacunaType brojRacuna,
+            LocalDateTime datumIVrijeme,
+            NacinPlacanjaType nacinPlacanja,
+            Iterator<InvoiceItem> items,
+            Amount iznosUkupno,
+            String legalNotice,
+            String jir,
+            String zki,
+            String operatorCode,
+            OutputStream out
+    ) throws IOException, WriterException {
 
-            var font = PDType0Font.load(doc, regularFontFile.getInputStream(), true);
-            var fontBold = PDType0Font.load(doc, boldFontFile.getInputStream(), true);
+        try (var doc = new PDDocument(MemoryUsageSetting.setupMixed(MAX_MAIN_MEMORY_BYTES).streamCache)) {
+            var font = PDType0Font.load(doc, regularFont, true);
+            var fontBold = PDType0Font.load(doc, boldFont, true);
 
-            var pageWidth = page.getMediaBox().getWidth();
+            var pageWidth = A4.getWidth();
             var tableWidth = pageWidth - 2 * MARGIN;
             var leftX = MARGIN;
             var rightX = pageWidth / 2f + RIGHT_COLUMN_OFFSET;
-            var y = page.getMediaBox().getHeight() - PAGE_TOP_MARGIN;
 
-            try (var cs = new PDPageContentStream(doc, page, APPEND, true, true)) {
-                y = addTitle(cs, page, fontBold, y);
-                y = addSupplierBlock(cs, font, supplierAddressLines, rightX, y);
-                y = addMetaBlock(cs, font, brojRacuna, datumIVrijeme, nacinPlacanja, leftX, y);
-                y = addItemsTable(cs, font, fontBold, items, leftX, y, tableWidth);
-                y = addTotals(cs, fontBold, iznosUkupno, leftX + tableWidth, y);
-                addLegalNotice(cs, font, legalNotice, jir, zki, operatorCode, leftX, y);
+            try (var pages = new Pages(doc)) {
+                var y = pages.next();
+
+                y = addTitle(pages.cs(), fontBold, titleX, y);
+                y = addSupplierBlock(pages.cs(), font, supplierAddressLines, rightX, y);
+                y = addMetaBlock(pages.cs(), font, brojRacuna, datumIVrijeme, nacinPlacanja, leftX, y);
+                var tableY = y;
+                var totals = new ReceiptTotals();
+                y = Instrumentation.observe(observationRegistry, Instrumentation.PDF, "items-table",
+                        () -> addItemsTable(pages, font, fontBold, items, totals, leftX, tableY, tableWidth));
+
+                if (y - CLOSING_BLOCK_HEIGHT < QR_Y + QR_SIZE) {
+                    y = pages.next();
+                }
+
+                y = addTotals(pages.cs(), fontBold, totals, iznosUkupno, leftX + tableWidth, y);
+                addLegalNotice(pages.cs(), font, legalNotice, jir, zki, operatorCode, leftX, y);
 
                 var qrData = buildQrData(jir, zki, datumIVrijeme, iznosUkupno);
-                addQrCodeAndFooter(cs, doc, page, font, qrData);
+                Instrumentation.observe(observationRegistry, Instrumentation.PDF, "qr-footer", () -> {
+                    addQrCodeAndFooter(pages.cs(), pages.page(), font, qrData, footerLine1X, footerLine2X);
+                    return null;
+                });
             }
 
-            try (var baos = new ByteArrayOutputStream()) {
-                doc.save(baos);
-                return baos.toByteArray();
-            }
+            // PDFBox derives the trailer /ID from the clock, this one makes identical input give identical bytes
+            doc.getDocument().getTrailer().setItem(COSName.ID, documentId(jir, zki));
+
+            // PDFBox closes the stream it saves to
+            Instrumentation.observe(observationRegistry, Instrumentation.PDF, "save", () -> {
+                doc.save(new NonClosingOutputStream(out));
+                return null;
+            });
         }
     }
 
-    private static String buildQrData(String jir,
-                                      String zki,
-                                      LocalDateTime dt,
-                                      String totalAmount) {
+    private static COSArray documentId(String jir, String zki) {
+        MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("MD5 is not available", ex);
+        }
+        md5.update(zki.getBytes(UTF_8));
+        if (jir != null) {
+            md5.update(jir.getBytes(UTF_8));
+        }
+        var id = new COSString(md5.digest());
 
-        var idParam = (jir != null && !jir.isBlank())
-                ? JIR_PARAM + jir
-                : ZKI_PARAM + zki;
+        var ids = new COSArray();
+        ids.add(id);
+        ids.add(id);
+        return ids;
+    }
 
-        var datePart = DATE_PARAM + QR_DATETIME_FMT.format(dt);
-        var amountPart = AMOUNT_PARAM + formatAmountForQr(totalAmount);
+    // also printed by EscPosReceiptRenderer
+    static String buildQrData(String jir,
+                              String zki,
+                              LocalDateTime dt,
+                              Amount totalAmount) {
+
+        var qr = new StringBuilder(QR_DATA_CAPACITY).append(QR_URL_BASE);
+        if (jir != null && !jir.isBlank()) {
+            qr.append(JIR_PARAM).append(jir);
+        } else {
+            qr.append(ZKI_PARAM).append(zki);
+        }
 
-        return QR_URL_BASE + idParam + "&" + datePart + "&" + amountPart;
-    }
+        qr.append('&').append(DATE_PARAM);
+        QR_DATETIME_FMT.formatTo(dt, qr);
+        // cents without a separator
+        qr.append('&').append(AMOUNT_PARAM).append(totalAmount.cents());
 
-    private static String formatAmountForQr(String amountTxt) {
-        return amountTxt.replace(".", "");
+        return qr.toString();
     }
 
-    private static float addTitle(PDPageContentStream cs, PDPage page, PDFont font, float y) throws IOException {
-        center(cs, page, font, TITLE_FONT_SIZE, RACUN_TITLE, y);
+    private static float addTitle(PDPageContentStream cs, PDFont font, float x, float y) throws IOException {
+        drawText(cs, font, TITLE_FONT_SIZE, x, y, RACUN_TITLE);
         return y - TITLE_GAP;
     }
 
@@ -205,7 +338,7 @@ public final class PdfReceiptGenerator {
                 BROJ_FAKTURE_LABEL + generateBrojFakture(br),
                 DATUM_IZDAVANJA_LABEL + DATE_FMT.format(dt),
                 VRIJEME_IZDAVANJA_LABEL + TIME_FMT.format(dt),
-                NACIN_PLACANJA_LABEL + generateNacinPlacanja(np)
+                NACIN_PLACANJA_LABEL + nacinPlacanja(np)
         );
 
         cs.beginText();
@@ -223,59 +356,69 @@ public final class PdfReceiptGenerator {
         return br.getBrOznRac() + "/" + br.getOznPosPr() + "/" + br.getOznNapUr();
     }
 
-    private static String generateNacinPlacanja(NacinPlacanjaType np) {
-        return switch (np) {
-            case G -> "Gotovina";
-            case K -> "Kartica";
-            case C -> "Ček";
-            case T -> "Transakcijski račun";
-            case O -> "Ostalo";
-        };
-    }
-
-    private static float addItemsTable(PDPageContentStream cs,
+    private static float addItemsTable(Pages pages,
                                        PDFont font,
                                        PDFont bold,
-                                       List<InvoiceItem> items,
+                                       Iterator<InvoiceItem> items,
+                                       ReceiptTotals totals,
                                        float x,
                                        float y,
                                        float tableW) throws IOException {
 
-        drawTableRow(cs, bold, x, y,
-                new String[]{HEADER_OPIS, HEADER_KOLICINA, HEADER_POREZ, HEADER_IZNOS_POREZA, HEADER_NETO_IZNOS});
+        drawTableRow(pages.cs(), bold, x, y, TABLE_HEADER);
 
         var cursorY = y - TABLE_ROW_HEIGHT;
-        for (var it : items) {
-            drawTableRow(cs, font, x, cursorY, new String[]{
+        while (items.hasNext()) {
+            // keep room for the carried subtotal below the last row of the page
+            if (cursorY - 2 * TABLE_ROW_HEIGHT < MARGIN) {
+                drawRule(pages.cs(), x, cursorY, tableW);
+                drawTableRow(pages.cs(), bold, x, cursorY, subtotalRow(PRIJENOS_LABEL, totals.net()));
+
+                cursorY = pages.next();
+                drawTableRow(pages.cs(), bold, x, cursorY, TABLE_HEADER);
+                cursorY -= TABLE_ROW_HEIGHT;
+                drawTableRow(pages.cs(), bold, x, cursorY, subtotalRow(DONOS_LABEL, totals.net()));
+                cursorY -= TABLE_ROW_HEIGHT;
+            }
+
+            var it = items.next();
+            var taxed = it.taxRate() != null;
+            drawTableRow(pages.cs(), font, x, cursorY, new String[]{
                     it.description(),
                     it.quantity().toString(),
-                    "-",
-                    "-",
+                    taxed ? percent(it.taxRate()) : NO_TAX,
+                    taxed ? money(it.tax()) : NO_TAX,
                     money(it.netAmount())
             });
+            totals.add(it);
             cursorY -= TABLE_ROW_HEIGHT;
         }
 
-        cs.moveTo(x, cursorY + HORIZONTAL_RULE_OFFSET);
-        cs.lineTo(x + tableW, cursorY + HORIZONTAL_RULE_OFFSET);
-        cs.stroke();
+        drawRule(pages.cs(), x, cursorY, tableW);
 
         return cursorY - AFTER_TABLE_GAP;
     }
 
+    private static String[] subtotalRow(String label, Amount subtotal) {
+        return new String[]{label, "", "", "", money(subtotal)};
+    }
+
     private static float addTotals(PDPageContentStream cs,
                                    PDFont bold,
-                                   String amount,
+                                   ReceiptTotals totals,
+                                   Amount amount,
                                    float rightX,
                                    float y) throws IOException {
 
-        for (var line : List.of(
-                UKUPAN_NETO_IZNOS_LABEL + money(amount),
-                UKUPAN_PLACANJE_IZNOS_LABEL + money(amount)
-        )) {
-            drawRightAlignedText(cs, bold, DEFAULT_FONT_SIZE, rightX, y, line);
+        drawRightAlignedText(cs, bold, DEFAULT_FONT_SIZE, rightX, y, UKUPAN_NETO_IZNOS_LABEL + " " + money(totals.net()));
+        y -= TOTALS_LINE_SPACING;
+        if (totals.taxed()) {
+            drawRightAlignedText(cs, bold, DEFAULT_FONT_SIZE, rightX, y, UKUPAN_IZNOS_POREZA_LABEL + " " + money(totals.tax()));
             y -= TOTALS_LINE_SPACING;
         }
+        // the amount CIS got, not a sum of the rounded item taxes
+        drawRightAlignedText(cs, bold, DEFAULT_FONT_SIZE, rightX, y, UKUPAN_PLACANJE_IZNOS_LABEL + " " + money(amount));
+        y -= TOTALS_LINE_SPACING;
 
         return y - TOTALS_BLOCK_GAP;
     }
@@ -305,28 +448,29 @@ public final class PdfReceiptGenerator {
     }
 
     private static void addQrCodeAndFooter(PDPageContentStream cs,
-                                           PDDocument doc,
                                            PDPage page,
                                            PDFont font,
-                                           String qrData) throws IOException, WriterException {
+                                           String qrData,
+                                           float footerLine1X,
+                                           float footerLine2X) throws IOException, WriterException {
 
-        var qrImg = generateQrImage(qrData);
-        var img = createFromByteArray(doc, bufferedImageToBytes(qrImg), QR_IMG_NAME);
+        var matrix = encodeQr(qrData);
         var qrX = (page.getMediaBox().getWidth() - QR_SIZE) / 2f;
 
-        cs.drawImage(img, qrX, QR_Y, QR_SIZE, QR_SIZE);
+        drawQr(cs, matrix, qrX, QR_Y, QR_SIZE);
 
-        center(cs, page, font, LEGAL_FONT_SIZE,
-                FOOTER_LINE1,
-                QR_Y - FOOTER_LINE1_GAP);
-
-        center(cs, page, font, LEGAL_FONT_SIZE,
-                FOOTER_LINE2,
-                QR_Y - FOOTER_LINE2_GAP);
+        drawText(cs, font, LEGAL_FONT_SIZE, footerLine1X, QR_Y - FOOTER_LINE1_GAP, FOOTER_LINE1);
+        drawText(cs, font, LEGAL_FONT_SIZE, footerLine2X, QR_Y - FOOTER_LINE2_GAP, FOOTER_LINE2);
     }
 
     /* ────────── low-level drawing ────────── */
 
+    private static void drawRule(PDPageContentStream cs, float x, float y, float width) throws IOException {
+        cs.moveTo(x, y + HORIZONTAL_RULE_OFFSET);
+        cs.lineTo(x + width, y + HORIZONTAL_RULE_OFFSET);
+        cs.stroke();
+    }
+
     private static void drawTableRow(PDPageContentStream cs,
                                      PDFont font,
                                      float x,
@@ -364,14 +508,12 @@ public final class PdfReceiptGenerator {
         cs.endText();
     }
 
-    private static void center(PDPageContentStream cs,
-                               PDPage page,
-                               PDFont font,
-                               float size,
-                               String txt,
-                               float y) throws IOException {
-        var textW = font.getStringWidth(txt) / 1000 * size;
-        var x = (page.getMediaBox().getWidth() - textW) / 2f;
+    private static void drawText(PDPageContentStream cs,
+                                 PDFont font,
+                                 float size,
+                                 float x,
+                                 float y,
+                                 String txt) throws IOException {
         cs.beginText();
         cs.setFont(font, size);
         cs.newLineAtOffset(x, y);
@@ -379,30 +521,133 @@ public final class PdfReceiptGenerator {
         cs.endText();
     }
 
+    private static float centeredX(PDFont font, float size, String txt) throws IOException {
+        var textW = font.getStringWidth(txt) / 1000 * size;
+        return (A4.getWidth() - textW) / 2f;
+    }
+
+    private static TrueTypeFont parseFont(Resource fontFile) throws IOException {
+        try (var in = fontFile.getInputStream()) {
+            return new TTFParser().parse(new RandomAccessReadBuffer(in.readAllBytes()));
+        }
+    }
+
     // QR generation
 
-    private static BufferedImage generateQrImage(String data) throws WriterException {
-        var writer = new QRCodeWriter();
-        var hints = Map.of(
-                EncodeHintType.MARGIN, QR_HINT_MARGIN,
-                ERROR_CORRECTION, Q
-        );
-        var matrix = writer.encode(data, QR_CODE, QR_SIZE, QR_SIZE, hints);
-        return toBufferedImage(matrix);
+    private static BitMatrix encodeQr(String data) throws WriterException {
+        // 0x0 makes ZXing return one cell per module, scaling is left to drawQr
+        return new QRCodeWriter().encode(data, QR_CODE, 0, 0, QR_HINTS);
     }
 
-    private static byte[] bufferedImageToBytes(BufferedImage img) throws IOException {
-        try (var baos = new ByteArrayOutputStream()) {
-            ImageIO.write(img, PNG_FORMAT, baos);
-            return baos.toByteArray();
+    /**
+     * Draws the matrix as filled rectangles, one per horizontal run of dark modules.
+     */
+    private static void drawQr(PDPageContentStream cs,
+                               BitMatrix matrix,
+                               float x,
+                               float y,
+                               float size) throws IOException {
+        var modules = matrix.getWidth();
+        var moduleSize = size / modules;
+
+        for (var row = 0; row < modules; row++) {
+            // matrix row 0 is the top edge, PDF y grows upwards
+            var rowY = y + size - (row + 1) * moduleSize;
+            var col = 0;
+            while (col < modules) {
+                if (!matrix.get(col, row)) {
+                    col++;
+                    continue;
+                }
+                var runStart = col;
+                while (col < modules && matrix.get(col, row)) {
+                    col++;
+                }
+                cs.addRect(x + runStart * moduleSize, rowY, (col - runStart) * moduleSize, moduleSize);
+            }
+        }
+        cs.fill();
+    }
+
+    private static String money(Amount value) {
+        return value.appendTo(new StringBuilder(24)).append(EUR_SUFFIX).toString();
+    }
+
+    private static String percent(Amount rate) {
+        return rate.appendTo(new StringBuilder(16)).append(PERCENT_SUFFIX).toString();
+    }
+
+    /**
+     * The page currently being drawn. Moving to the next page closes the content stream
+     * of the previous one, so finished pages are handed over to the document's stream cache.
+     */
+    private static final class Pages implements AutoCloseable {
+
+        private final PDDocument doc;
+        private PDPage page;
+        private PDPageContentStream cs;
+
+        private Pages(PDDocument doc) {
+            this.doc = doc;
+        }
+
+        /**
+         * Starts a new page and returns the y coordinate to continue drawing from.
+         */
+        private float next() throws IOException {
+            close();
+            page = new PDPage(A4);
+            doc.addPage(page);
+            cs = new PDPageContentStream(doc, page, APPEND, true, true);
+            return page.getMediaBox().getHeight() - PAGE_TOP_MARGIN;
+        }
+
+        private PDPage page() {
+            return page;
+        }
+
+        private PDPageContentStream cs() {
+            return cs;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (cs != null) {
+                cs.close();
+                cs = null;
+            }
         }
     }
 
-    private static String money(String value) {
-        return value + EUR_SUFFIX;
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+
+        private NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
     }
 
+    /**
+     * @param netAmount of all {@code quantity} units
+     * @param taxRate   in percent, {@code null} when the item is not taxed
+     */
     @Builder(toBuilder = true)
-    public record InvoiceItem(String description, Integer quantity, String netAmount) {
+    public record InvoiceItem(String description, Integer quantity, Amount netAmount, Amount taxRate) {
+
+        /**
+         * @return {@code null} when the item is not taxed
+         */
+        public Amount tax() {
+            return taxRate == null ? null : taxRate.percentOf(netAmount);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,135 @@
+package hr.leadtheway.fiskalizacija;
+
+import io.micrometer.observation.ObservationRegistry;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of pre-configured JAX-WS ports. A port (and its request context and
+ * handler chain) is only ever used by the thread that borrowed it.
+ */
+public class PortPool<T> {
+
+    private final Class<T> portType;
+    private final BlockingQueue<T> idle;
+    private final int size;
+    private final Duration borrowTimeout;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    public PortPool(Class<T> portType, int size, Duration borrowTimeout, Supplier<T> portFactory) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be positive: " + size);
+        }
+        this.portType = portType;
+        this.size = size;
+        this.borrowTimeout = borrowTimeout;
+        this.idle = new ArrayBlockingQueue<>(size);
+        for (var i = 0; i < size; i++) {
+            idle.add(portFactory.get());
+        }
+    }
+
+    public <R> R execute(Function<T, R> call) {
+        var port = borrow();
+        try {
+            return call.apply(port);
+        } finally {
+            release(port);
+        }
+    }
+
+    public T borrow() {
+        var start = System.nanoTime();
+        T port;
+        try {
+            port = idle.poll(borrowTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a " + portType.getSimpleName(), ex);
+        } finally {
+            waitNanos.add(System.nanoTime() - start);
+        }
+
+        if (port == null) {
+            timeouts.increment();
+            throw new BorrowTimeoutException("No " + portType.getSimpleName() + " available within " + borrowTimeout);
+        }
+
+        borrows.increment();
+        active.incrementAndGet();
+        return port;
+    }
+
+    public void release(T port) {
+        active.decrementAndGet();
+        idle.offer(port);
+    }
+
+    /**
+     * A thread-safe view of the pool: every call borrows a port, invokes it and returns it.
+     */
+    public T asPort() {
+        return asPort(ObservationRegistry.NOOP, portType.getSimpleName());
+    }
+
+    /**
+     * Same as {@link #asPort()}, every call is observed as {@code observationName} with the method
+     * name as the operation. The wait for a free port is part of the observation.
+     */
+    public T asPort(ObservationRegistry observationRegistry, String observationName) {
+        var proxy = Proxy.newProxyInstance(portType.getClassLoader(), new Class<?>[]{portType}, (self, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "equals" -> self == args[0];
+                    case "hashCode" -> System.identityHashCode(self);
+                    default -> "PortPool(" + portType.getSimpleName() + ")";
+                };
+            }
+
+            return Instrumentation.observe(observationRegistry, observationName, method.getName(), () -> {
+                var port = borrow();
+                try {
+                    return method.invoke(port, args);
+                } catch (InvocationTargetException ex) {
+                    if (ex.getCause() instanceof Exception cause) {
+                        throw cause;
+                    }
+                    throw (Error) ex.getCause();
+                } finally {
+                    release(port);
+                }
+            });
+        });
+        return portType.cast(proxy);
+    }
+
+    public Stats stats() {
+        return new Stats(size, idle.size(), active.get(), borrows.sum(), timeouts.sum(), Duration.ofNanos(waitNanos.sum()));
+    }
+
+    /**
+     * Every port stayed busy for the whole borrow timeout, the call was not made.
+     */
+    public static class BorrowTimeoutException extends IllegalStateException {
+
+        public BorrowTimeoutException(String message) {
+            super(message);
+        }
+    }
+
+    public record Stats(int size, int idle, int active, long borrows, long timeouts, Duration totalWait) {
+    }
+}
@@ -0,0 +1,269 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.FiskalizacijaPortType;
+import hr.leadtheway.wsdl.GreskaType;
+import hr.leadtheway.wsdl.ProvjeraOdgovor;
+import hr.leadtheway.wsdl.ProvjeraZahtjev;
+import hr.leadtheway.wsdl.RacunType;
+import hr.leadtheway.wsdl.ZaglavljeType;
+import jakarta.xml.bind.JAXBException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+/**
+ * Checks past receipts against CIS with {@code provjera}. The receipts are read one at a time
+ * from any XML holding {@code tns:Racun} elements (e.g. an export wrapping them in one root, or
+ * a {@code RacunZahtjev}), at most {@code parallelism} checks are in flight while the next ones
+ * are read, and every receipt CIS does not confirm is written to the report as soon as its
+ * answer is in. Nothing is kept per receipt, so a run over millions of them stays flat.
+ * <p>
+ * The report is CSV: {@code BrOznRac;OznPosPr;OznNapUr;ZastKod;status;detail}.
+ */
+@Slf4j
+@Service
+public class ProvjeraReconciler {
+
+    private static final String REPORT_HEADER = "BrOznRac;OznPosPr;OznNapUr;ZastKod;status;detail\n";
+    private static final DateTimeFormatter DATUM_VRIJEME_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy'T'HH:mm:ss");
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final FiskalizacijaPortType port;
+    private final int parallelism;
+
+    public ProvjeraReconciler(
+            FiskalizacijaPortType fiskalizacijaPort,
+            @Value("${fina.reconciliation.parallelism}") int parallelism
+    ) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.port = fiskalizacijaPort;
+        this.parallelism = parallelism;
+    }
+
+    public Summary reconcile(Path racuni, Path report) throws IOException {
+        try (var in = Files.newInputStream(racuni);
+             var out = Files.newBufferedWriter(report, UTF_8)) {
+            return reconcile(in, out);
+        }
+    }
+
+    /**
+     * Blocks until every receipt read from {@code racuni} has been checked. {@code report} is
+     * not closed.
+     */
+    public Summary reconcile(InputStream racuni, Writer report) throws IOException {
+        var counts = new Counts();
+        var mismatches = new Report(report);
+        var permits = new Semaphore(parallelism);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var reader = INPUT_FACTORY.createXMLStreamReader(racuni);
+            var unmarshaller = FiskalizacijaJaxb.CONTEXT.createUnmarshaller();
+            try {
+                while (mismatches.error == null && nextRacun(reader)) {
+                    var racun = unmarshaller.unmarshal(reader, RacunType.class).getValue();
+                    // reading ahead stops here while parallelism checks are in flight
+                    permits.acquire();
+                    executor.execute(() -> {
+                        try {
+                            check(racun, counts, mismatches);
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | JAXBException ex) {
+            throw new IOException("Cannot read receipts to reconcile", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reconciling", ex);
+        }
+
+        if (mismatches.error != null) {
+            throw mismatches.error;
+        }
+        report.flush();
+        var summary = counts.summary();
+        log.info("Reconciliation done: {}", summary);
+        return summary;
+    }
+
+    private void check(RacunType racun, Counts counts, Report report) {
+        counts.checked.increment();
+        Status status;
+        String detail;
+        try {
+            var odgovor = port.provjera(zahtjev(racun));
+            var greske = greske(odgovor);
+            if (!greske.isEmpty()) {
+                status = Status.ERRORS;
+                detail = greske;
+            } else if (!racun.equals(odgovor.getRacun())) {
+                status = Status.DIFFERENT;
+                detail = differences(racun, odgovor.getRacun());
+            } else {
+                counts.matched.increment();
+                return;
+            }
+        } catch (RuntimeException ex) {
+            status = Status.FAILED;
+            detail = ex.toString();
+        }
+
+        (status == Status.FAILED ? counts.failed : counts.mismatched).increment();
+        report.write(racun, status, detail);
+    }
+
+    private static ProvjeraZahtjev zahtjev(RacunType racun) {
+        return ProvjeraZahtjev.builder()
+                .id("ProvjeraZahtjev")
+                .zaglavlje(ZaglavljeType.builder()
+                        .idPoruke(UUID.randomUUID().toString())
+                        .datumVrijeme(LocalDateTime.now().format(DATUM_VRIJEME_FORMATTER))
+                        .build())
+                .racun(racun)
+                .build();
+    }
+
+    private static String greske(ProvjeraOdgovor odgovor) {
+        if (odgovor.getGreske() == null) {
+            return "";
+        }
+        return odgovor.getGreske().getGreska().stream()
+                .map(GreskaType::getSifraGreske)
+                .collect(Collectors.joining(","));
+    }
+
+    private static String differences(RacunType sent, RacunType cis) {
+        if (cis == null) {
+            return "no Racun in response";
+        }
+        var fields = new ArrayList<String>();
+        diff(fields, "Oib", sent.getOib(), cis.getOib());
+        diff(fields, "DatVrijeme", sent.getDatVrijeme(), cis.getDatVrijeme());
+        diff(fields, "BrRac", sent.getBrRac(), cis.getBrRac());
+        diff(fields, "Pdv", sent.getPdv(), cis.getPdv());
+        diff(fields, "IznosUkupno", sent.getIznosUkupno(), cis.getIznosUkupno());
+        diff(fields, "NacinPlac", sent.getNacinPlac(), cis.getNacinPlac());
+        diff(fields, "OibOper", sent.getOibOper(), cis.getOibOper());
+        diff(fields, "ZastKod", sent.getZastKod(), cis.getZastKod());
+        return fields.isEmpty() ? "other" : String.join(",", fields);
+    }
+
+    private static void diff(List<String> fields, String name, Object sent, Object cis) {
+        if (!Objects.equals(sent, cis)) {
+            fields.add(name);
+        }
+    }
+
+    private static boolean nextRacun(XMLStreamReader reader) throws XMLStreamException {
+        // unmarshal leaves the reader after the end tag, which may already be the next start tag
+        if (reader.isStartElement() && isRacun(reader)) {
+            return true;
+        }
+        while (reader.hasNext()) {
+            if (reader.next() == START_ELEMENT && isRacun(reader)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRacun(XMLStreamReader reader) {
+        return "Racun".equals(reader.getLocalName()) && FiskalizacijaJaxb.NAMESPACE.equals(reader.getNamespaceURI());
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        var factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    public enum Status {
+        /** CIS answered with errors, e.g. it does not know the receipt */
+        ERRORS,
+        /** CIS knows the receipt with other values */
+        DIFFERENT,
+        /** no answer from CIS */
+        FAILED
+    }
+
+    public record Summary(long checked, long matched, long mismatched, long failed) {
+    }
+
+    private static final class Counts {
+
+        private final LongAdder checked = new LongAdder();
+        private final LongAdder matched = new LongAdder();
+        private final LongAdder mismatched = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+
+        private Summary summary() {
+            return new Summary(checked.sum(), matched.sum(), mismatched.sum(), failed.sum());
+        }
+    }
+
+    private static final class Report {
+
+        private final Writer out;
+        // the first write that failed, stops the run
+        private volatile IOException error;
+
+        private Report(Writer out) throws IOException {
+            this.out = out;
+            out.write(REPORT_HEADER);
+        }
+
+        private synchronized void write(RacunType racun, Status status, String detail) {
+            var brRac = racun.getBrRac();
+            try {
+                out.write(String.join(";",
+                        csv(brRac.getBrOznRac()), csv(brRac.getOznPosPr()), csv(brRac.getOznNapUr()),
+                        csv(racun.getZastKod()), status.name(), csv(detail)));
+                out.write('\n');
+            } catch (IOException ex) {
+                if (error == null) {
+                    error = ex;
+                }
+            }
+        }
+
+        private static String csv(String value) {
+            if (value == null) {
+                return "";
+            }
+            if (value.indexOf(';') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+}
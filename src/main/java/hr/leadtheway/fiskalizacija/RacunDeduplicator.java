@@ -0,0 +1,115 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.GreskaType;
+import hr.leadtheway.wsdl.RacunZahtjev;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends a receipt to CIS at most once while its JIR is known. Tills retry {@code racuni} on
+ * timeouts; a retry of a receipt that already has a JIR gets it from the {@link JirIndex}
+ * without signing or a round trip, and retries arriving while the first request is still on
+ * its way wait for that request instead of sending their own.
+ */
+@Slf4j
+@Service
+public class RacunDeduplicator {
+
+    private final TenantRouter tenantRouter;
+    private final JirIndex index;
+    private final Map<JirIndex.Key, CompletableFuture<Result>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public RacunDeduplicator(TenantRouter tenantRouter, JirIndex jirIndex) {
+        this.tenantRouter = tenantRouter;
+        this.index = jirIndex;
+    }
+
+    public Result racuni(RacunZahtjev zahtjev) {
+        var key = JirIndex.Key.of(zahtjev.getRacun());
+
+        var jir = index.get(key);
+        if (jir != null) {
+            hits.increment();
+            return new Result(jir, List.of(), true);
+        }
+
+        var call = new CompletableFuture<Result>();
+        var first = inFlight.putIfAbsent(key, call);
+        if (first != null) {
+            coalesced.increment();
+            return join(first);
+        }
+
+        try {
+            // the request before this one may have finished between the lookup and putIfAbsent
+            jir = index.get(key);
+            var result = jir != null ? new Result(jir, List.of(), true) : send(key, zahtjev);
+            call.complete(result);
+            return result;
+        } catch (Throwable ex) {
+            // errors too, the retries waiting for this call would otherwise wait forever
+            call.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), coalesced.sum(), misses.sum());
+    }
+
+    private Result send(JirIndex.Key key, RacunZahtjev zahtjev) {
+        misses.increment();
+        var odgovor = tenantRouter.racuni(zahtjev);
+        var greske = odgovor.getGreske() == null ? List.<GreskaType>of() : odgovor.getGreske().getGreska();
+
+        // only a JIR is final, CIS may accept the same receipt after an error
+        if (odgovor.getJir() != null) {
+            try {
+                index.put(key, odgovor.getJir());
+            } catch (IOException ex) {
+                log.error("Cannot index JIR {} of receipt {}", odgovor.getJir(), key.zastKod(), ex);
+            }
+        }
+        return new Result(odgovor.getJir(), greske, false);
+    }
+
+    private static Result join(CompletableFuture<Result> call) {
+        try {
+            return call.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (ex.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * {@code cached} is set when the JIR came from an earlier request, {@code greske} is then empty.
+     */
+    public record Result(String jir, List<GreskaType> greske, boolean cached) {
+    }
+
+    /**
+     * {@code coalesced} counts requests that waited for an identical one already in flight.
+     */
+    public record Stats(long hits, long coalesced, long misses) {
+    }
+}
@@ -0,0 +1,159 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.GreskaType;
+import jakarta.xml.ws.WebServiceException;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.InboundXMLSec;
+import org.apache.xml.security.stax.ext.XMLSec;
+import org.apache.xml.security.stax.ext.XMLSecurityProperties;
+import org.apache.xml.security.stax.securityEvent.SignedElementSecurityEvent;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stax.StAXSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+/**
+ * Reads only what is needed from a CIS response: {@code IdPoruke}, {@code Jir} and the
+ * {@code Greske}. Works for every {@code *Odgovor}, the elements are matched by local name.
+ * <p>
+ * With a CIS certificate the enveloped signature is verified while the response streams by,
+ * with the key of that certificate and not whatever the response carries in its KeyInfo.
+ * A response whose signature does not verify, or that carries no signature over its root
+ * element, is rejected. A signature over an inner element only would let an unsigned
+ * wrapper around a genuine response pass.
+ */
+public class RacunOdgovorReader {
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final InboundXMLSec inbound;
+
+    /**
+     * @param cisCertificate the trust anchor for response signatures, {@code null} skips verification
+     */
+    public RacunOdgovorReader(X509Certificate cisCertificate) {
+        if (cisCertificate == null) {
+            this.inbound = null;
+            return;
+        }
+
+        var properties = new XMLSecurityProperties();
+        properties.setSignatureVerificationKey(cisCertificate.getPublicKey());
+        try {
+            this.inbound = XMLSec.getInboundWSSec(properties);
+        } catch (XMLSecurityException ex) {
+            throw new IllegalStateException("Cannot configure CIS response verification", ex);
+        }
+    }
+
+    public Odgovor read(Source response) {
+        var rootSigned = new boolean[1];
+        try {
+            var reader = reader(response);
+            if (inbound != null) {
+                reader = inbound.processInMessage(reader, null, event -> {
+                    // the path starts at the payload root, a single element is the root itself
+                    if (event instanceof SignedElementSecurityEvent signed && signed.getElementPath().size() == 1) {
+                        rootSigned[0] = true;
+                    }
+                });
+            }
+
+            var odgovor = read(reader);
+            reader.close();
+
+            if (inbound == null) {
+                return new Odgovor(odgovor.idPoruke(), odgovor.jir(), odgovor.greske(), SignatureStatus.NOT_VERIFIED);
+            }
+            if (!rootSigned[0]) {
+                throw new WebServiceException("CIS response carries no signature over its root element");
+            }
+            return new Odgovor(odgovor.idPoruke(), odgovor.jir(), odgovor.greske(), SignatureStatus.VERIFIED);
+        } catch (XMLStreamException | XMLSecurityException ex) {
+            // Santuario reports a digest or signature value mismatch as one of these
+            throw new WebServiceException("Cannot read CIS response", ex);
+        }
+    }
+
+    private static Odgovor read(XMLStreamReader reader) throws XMLStreamException {
+        String idPoruke = null;
+        String jir = null;
+        List<GreskaType> greske = List.of();
+        String sifraGreske = null;
+        String porukaGreske = null;
+
+        while (reader.hasNext()) {
+            var event = reader.next();
+            if (event == START_ELEMENT) {
+                switch (reader.getLocalName()) {
+                    case "IdPoruke" -> idPoruke = reader.getElementText();
+                    case "Jir" -> jir = reader.getElementText();
+                    case "SifraGreske" -> sifraGreske = reader.getElementText();
+                    case "PorukaGreske" -> porukaGreske = reader.getElementText();
+                    case "Greske" -> greske = new ArrayList<>();
+                    default -> {
+                    }
+                }
+            } else if (event == END_ELEMENT && "Greska".equals(reader.getLocalName())) {
+                greske.add(GreskaType.builder().sifraGreske(sifraGreske).porukaGreske(porukaGreske).build());
+                sifraGreske = null;
+                porukaGreske = null;
+            }
+        }
+        return new Odgovor(idPoruke, jir, greske, null);
+    }
+
+    private static XMLStreamReader reader(Source source) throws XMLStreamException {
+        if (source instanceof StAXSource stax && stax.getXMLStreamReader() != null) {
+            return stax.getXMLStreamReader();
+        }
+        if (source instanceof StreamSource) {
+            return INPUT_FACTORY.createXMLStreamReader(source);
+        }
+
+        // DOM or SAX sources are not what the JAX-WS RI hands out in payload mode
+        var bytes = new ByteArrayOutputStream();
+        try {
+            TransformerFactory.newInstance().newTransformer().transform(source, new StreamResult(bytes));
+        } catch (TransformerException ex) {
+            throw new XMLStreamException("Cannot serialize " + source.getClass().getSimpleName(), ex);
+        }
+        return INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        var factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    public enum SignatureStatus {
+        VERIFIED,
+        NOT_VERIFIED
+    }
+
+    /**
+     * {@code greske} is empty when CIS reported no errors.
+     */
+    public record Odgovor(String idPoruke, String jir, List<GreskaType> greske, SignatureStatus signature) {
+
+        public boolean uspjesno() {
+            return jir != null && greske.isEmpty();
+        }
+    }
+}
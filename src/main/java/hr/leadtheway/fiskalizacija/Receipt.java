@@ -0,0 +1,34 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.fiskalizacija.PdfReceiptGenerator.InvoiceItem;
+import hr.leadtheway.wsdl.BrojRacunaType;
+import hr.leadtheway.wsdl.NacinPlacanjaType;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.Builder;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Builder(toBuilder = true)
+public record Receipt(
+        @NotEmpty List<String> supplierAddressLines,
+        @NotNull BrojRacunaType brojRacuna,
+        @NotNull LocalDateTime datumIVrijeme,
+        @NotNull NacinPlacanjaType nacinPlacanja,
+        @NotNull List<InvoiceItem> items,
+        @NotNull Amount iznosUkupno,
+        @NotNull String legalNotice,
+        String jir,
+        @NotNull String zki,
+        @NotNull String operatorCode
+) {
+
+    public String brojFakture() {
+        return brojRacuna.getBrOznRac() + "/" + brojRacuna.getOznPosPr() + "/" + brojRacuna.getOznNapUr();
+    }
+
+    public String pdfFileName() {
+        return "racun-" + brojFakture().replace('/', '-') + ".pdf";
+    }
+}
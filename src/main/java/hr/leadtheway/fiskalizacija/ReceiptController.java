@@ -0,0 +1,164 @@
+package hr.leadtheway.fiskalizacija;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.zxing.WriterException;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ContentDisposition;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.springframework.http.HttpHeaders.CACHE_CONTROL;
+import static org.springframework.http.HttpHeaders.CONTENT_DISPOSITION;
+import static org.springframework.http.HttpHeaders.ETAG;
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
+import static org.springframework.http.MediaType.APPLICATION_OCTET_STREAM_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_PDF_VALUE;
+import static org.springframework.http.MediaType.TEXT_PLAIN_VALUE;
+
+@RestController
+@RequestMapping("/receipts")
+@RequiredArgsConstructor
+public class ReceiptController {
+
+    private static final int INITIAL_PDF_BUFFER_SIZE = 64 * 1024;
+    // browsers keep the PDF but ask again, a 304 costs a lookup
+    private static final String CACHE_CONTROL_VALUE = "private, no-cache";
+    private static final String TEXT_PLAIN_UTF8_VALUE = TEXT_PLAIN_VALUE + ";charset=UTF-8";
+
+    private final PdfReceiptGenerator pdfReceiptGenerator;
+    private final PdfReceiptCache pdfReceiptCache;
+    private final EscPosReceiptRenderer escPosReceiptRenderer;
+    private final ObjectMapper objectMapper;
+
+    @PostMapping(value = "/pdf", produces = APPLICATION_PDF_VALUE)
+    public void pdf(
+            @Valid @RequestBody Receipt receipt,
+            HttpServletResponse response
+    ) throws IOException, WriterException {
+        var key = PdfReceiptCache.key(receipt);
+        // the same JIR with other items or totals in the body must not get the PDF of the first one
+        var source = PdfReceiptCache.source(objectMapper.writeValueAsBytes(receipt));
+        // a 304 answers only GET and HEAD, a POST always gets the document
+        if (serveCached(pdfReceiptCache.get(key, source), receipt.pdfFileName(), null, response)) {
+            return;
+        }
+
+        // the document is rendered once into this buffer so that Content-Length is known up front,
+        // writeTo() then hands the buffer to the response without the toByteArray() copy
+        var pdf = new PdfBuffer();
+        pdfReceiptGenerator.generatePdf(receipt, pdf);
+
+        if (PdfReceiptCache.isKey(key)) {
+            response.setHeader(ETAG, pdfReceiptCache.put(key, source, pdf.buffer(), pdf.size()));
+            response.setHeader(CACHE_CONTROL, CACHE_CONTROL_VALUE);
+        }
+        response.setContentType(APPLICATION_PDF_VALUE);
+        response.setContentLengthLong(pdf.size());
+        response.setHeader(CONTENT_DISPOSITION, inline(receipt.pdfFileName()));
+        pdf.writeTo(response.getOutputStream());
+    }
+
+    /**
+     * A receipt rendered before, by its JIR or, while it has none, its ZKI.
+     */
+    @GetMapping(value = "/{key}.pdf", produces = APPLICATION_PDF_VALUE)
+    public void cachedPdf(
+            @PathVariable String key,
+            @RequestHeader(value = IF_NONE_MATCH, required = false) String ifNoneMatch,
+            HttpServletResponse response
+    ) throws IOException {
+        if (!serveCached(pdfReceiptCache.get(key), "racun-" + key + ".pdf", ifNoneMatch, response)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        }
+    }
+
+    /**
+     * ESC/POS commands for a thermal till printer, sent to it as they are.
+     */
+    @PostMapping(value = "/escpos", produces = APPLICATION_OCTET_STREAM_VALUE)
+    public void escPos(@Valid @RequestBody Receipt receipt, HttpServletResponse response) throws IOException {
+        var out = new EscPosReceiptRenderer.Buffer();
+        escPosReceiptRenderer.render(receipt, out);
+
+        response.setContentType(APPLICATION_OCTET_STREAM_VALUE);
+        response.setContentLength(out.size());
+        out.writeTo(response.getOutputStream());
+    }
+
+    @PostMapping(value = "/text", produces = TEXT_PLAIN_UTF8_VALUE)
+    public void text(@Valid @RequestBody Receipt receipt, HttpServletResponse response) throws IOException {
+        var out = new EscPosReceiptRenderer.Buffer();
+        escPosReceiptRenderer.renderText(receipt, out);
+
+        response.setContentType(TEXT_PLAIN_UTF8_VALUE);
+        response.setContentLength(out.size());
+        out.writeTo(response.getOutputStream());
+    }
+
+    /**
+     * Writes {@code cached}, or a 304 when {@code ifNoneMatch} matches its ETag. Only a GET
+     * passes its {@code If-None-Match}.
+     */
+    private boolean serveCached(PdfReceiptCache.Cached cached, String fileName, String ifNoneMatch, HttpServletResponse response) throws IOException {
+        if (cached == null) {
+            return false;
+        }
+
+        try (var in = cached.in()) {
+            response.setHeader(ETAG, cached.etag());
+            response.setHeader(CACHE_CONTROL, CACHE_CONTROL_VALUE);
+            if (matches(ifNoneMatch, cached.etag())) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return true;
+            }
+
+            response.setContentType(APPLICATION_PDF_VALUE);
+            response.setContentLengthLong(cached.size());
+            response.setHeader(CONTENT_DISPOSITION, inline(fileName));
+            in.transferTo(response.getOutputStream());
+        }
+        return true;
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (var candidate : ifNoneMatch.split(",")) {
+            var tag = candidate.trim();
+            // If-None-Match compares weakly
+            if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String inline(String fileName) {
+        return ContentDisposition.inline().filename(fileName).build().toString();
+    }
+
+    /**
+     * Lets the cache write the rendered bytes without a {@code toByteArray()} copy.
+     */
+    private static final class PdfBuffer extends ByteArrayOutputStream {
+
+        private PdfBuffer() {
+            super(INITIAL_PDF_BUFFER_SIZE);
+        }
+
+        private byte[] buffer() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.NacinPlacanjaType;
+
+/**
+ * The wording shared by {@link PdfReceiptGenerator} and {@link EscPosReceiptRenderer}, so that
+ * the PDF and the printed receipt do not drift apart. Only the layout differs between them.
+ */
+final class ReceiptText {
+
+    static final String RACUN_TITLE = "Račun";
+    static final String BROJ_FAKTURE_LABEL = "Broj fakture: ";
+    static final String DATUM_IZDAVANJA_LABEL = "Datum izdavanja računa: ";
+    static final String VRIJEME_IZDAVANJA_LABEL = "Vrijeme izdavanja računa: ";
+    static final String NACIN_PLACANJA_LABEL = "Način plaćanja: ";
+    static final String HEADER_OPIS = "Opis";
+    static final String HEADER_NETO_IZNOS = "Neto iznos";
+    // the amount follows after a space or, on a till, at the end of the line
+    static final String UKUPAN_NETO_IZNOS_LABEL = "Ukupan neto iznos:";
+    static final String UKUPAN_IZNOS_POREZA_LABEL = "Ukupan iznos poreza:";
+    static final String UKUPAN_PLACANJE_IZNOS_LABEL = "Ukupan iznos za plaćanje:";
+    static final String JIR_LABEL = "JIR: ";
+    static final String ZKI_LABEL = "ZKI: ";
+    static final String RACUN_IZDAO_LABEL = "Račun izdao: ";
+    static final String FOOTER_LINE1 = "Izdao/la u ime dobavljača ..., obrt za usluge, vl. ...";
+    static final String FOOTER_LINE2 = "Second footer line.";
+    static final String EUR_SUFFIX = " EUR";
+    static final String PERCENT_SUFFIX = " %";
+
+    private ReceiptText() {
+    }
+
+    static String nacinPlacanja(NacinPlacanjaType np) {
+        return switch (np) {
+            case G -> "Gotovina";
+            case K -> "Kartica";
+            case C -> "Ček";
+            case T -> "Transakcijski račun";
+            case O -> "Ostalo";
+        };
+    }
+}
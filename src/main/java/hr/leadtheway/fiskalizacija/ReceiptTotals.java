@@ -0,0 +1,42 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.fiskalizacija.PdfReceiptGenerator.InvoiceItem;
+
+/**
+ * Net amount and tax of the items of a receipt, summed up while the items are rendered.
+ */
+final class ReceiptTotals {
+
+    private long netCents;
+    private long taxCents;
+    private boolean taxed;
+
+    void reset() {
+        netCents = 0;
+        taxCents = 0;
+        taxed = false;
+    }
+
+    void add(InvoiceItem item) {
+        netCents = Math.addExact(netCents, item.netAmount().cents());
+        if (item.taxRate() != null) {
+            taxCents = Math.addExact(taxCents, item.tax().cents());
+            taxed = true;
+        }
+    }
+
+    Amount net() {
+        return Amount.ofCents(netCents);
+    }
+
+    Amount tax() {
+        return Amount.ofCents(taxCents);
+    }
+
+    /**
+     * Whether any item had a tax rate, a receipt outside the VAT system shows no tax.
+     */
+    boolean taxed() {
+        return taxed;
+    }
+}
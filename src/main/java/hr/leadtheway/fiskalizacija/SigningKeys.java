@@ -0,0 +1,228 @@
+package hr.leadtheway.fiskalizacija;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchService;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStore.PasswordProtection;
+import java.security.KeyStore.PrivateKeyEntry;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * The signing keys in a PKCS12 keystore, looked up by the OIB of the business they sign for.
+ * <p>
+ * A keystore on the file system is watched: a renewed certificate, or a keystore with another business
+ * added, is loaded next to the keys in use and swapped in with a single volatile write.
+ * Requests signing at that moment finish with the old key, none of them wait for the reload.
+ * A keystore that cannot be read, e.g. one still being copied, leaves the old keys in place.
+ * <p>
+ * The OIB comes from the certificate subject. FINA puts it in the organization identifier
+ * ({@code 2.5.4.97}) as {@code VATHR-<oib>}, older certificates as {@code HR<oib>}, and some
+ * carry it in the serial number ({@code 2.5.4.5}) as {@code OIB:<oib>} or {@code PNOHR-<oib>}.
+ */
+@Slf4j
+public class SigningKeys implements Closeable {
+
+    private static final Pattern OIB_IN_SUBJECT = Pattern.compile("\\b(?:(?:VAT|NTR|PNO)?HR-?|OIB:?\\s*)(\\d{11})\\b");
+    // editors and copy tools write a file in several steps, wait for them to finish
+    private static final long SETTLE_MILLIS = 500;
+
+    private final Resource keystore;
+    private final char[] storePass;
+    private final char[] keyPass;
+    private final String defaultAlias;
+    private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+
+    private volatile Keys keys;
+    private WatchService watchService;
+
+    /**
+     * @param defaultAlias the key used when a message carries no OIB, {@code null} when every
+     *                     message must name its business
+     */
+    public SigningKeys(Resource keystore, char[] storePass, char[] keyPass, String defaultAlias) throws IOException, GeneralSecurityException {
+        this.keystore = keystore;
+        // kept, every reload needs them again
+        this.storePass = storePass.clone();
+        this.keyPass = keyPass.clone();
+        this.defaultAlias = defaultAlias;
+        this.keys = load();
+    }
+
+    /**
+     * The key of {@code oib}, or the default key when {@code oib} is {@code null}. A business is
+     * never signed for with another business' key.
+     *
+     * @throws IllegalStateException when there is no key for {@code oib}, or no default key
+     */
+    public SigningKey forOib(String oib) {
+        var current = keys;
+        var key = oib == null ? current.defaultKey() : current.byOib().get(oib);
+        if (key == null) {
+            throw new IllegalStateException(oib == null ? "No default signing key" : "No signing key for OIB " + oib);
+        }
+        return key;
+    }
+
+    public SigningKey forAlias(String alias) {
+        var key = keys.byAlias().get(alias);
+        if (key == null) {
+            throw new IllegalStateException("No signing key with alias " + alias);
+        }
+        return key;
+    }
+
+    /**
+     * @throws IllegalStateException when no default alias is configured
+     */
+    public SigningKey defaultKey() {
+        return forOib(null);
+    }
+
+    public Set<String> oibs() {
+        return keys.byOib().keySet();
+    }
+
+    /**
+     * Runs after every successful reload, for callers that keep something derived from a key.
+     */
+    public void addReloadListener(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    public void reload() throws IOException, GeneralSecurityException {
+        keys = load();
+        reloadListeners.forEach(Runnable::run);
+    }
+
+    /**
+     * Starts watching the keystore file for changes, on a daemon thread. A keystore that is not a
+     * file, e.g. one packaged in the application jar, is only read once.
+     */
+    public synchronized void watch() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+        if (!keystore.isFile()) {
+            log.info("Keystore {} is not a file, changes to it are not picked up", keystore);
+            return;
+        }
+        var keystoreFile = keystore.getFile().toPath().toAbsolutePath();
+        var directory = keystoreFile.getParent();
+        watchService = directory.getFileSystem().newWatchService();
+        // an atomic move over the old file shows up as a create
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+
+        var watcher = watchService;
+        Thread.ofPlatform().name("signing-keys-watcher").daemon().start(() -> watch(watcher, keystoreFile.getFileName()));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+            watchService = null;
+        }
+    }
+
+    private void watch(WatchService watcher, Path fileName) {
+        try {
+            while (true) {
+                var watchKey = watcher.take();
+                var changed = watchKey.pollEvents().stream().anyMatch(event -> fileName.equals(event.context()));
+                watchKey.reset();
+                if (!changed) {
+                    continue;
+                }
+
+                // one reload for a burst of events
+                TimeUnit.MILLISECONDS.sleep(SETTLE_MILLIS);
+                var more = watcher.poll();
+                if (more != null) {
+                    more.pollEvents();
+                    more.reset();
+                }
+
+                try {
+                    reload();
+                } catch (IOException | GeneralSecurityException | RuntimeException ex) {
+                    log.warn("Cannot reload keystore {}, the previous keys stay in use: {}", keystore, ex.toString());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            // closed
+        }
+    }
+
+    /* ────────── loading ────────── */
+
+    private Keys load() throws IOException, GeneralSecurityException {
+        var keyStore = KeyStore.getInstance("PKCS12");
+        try (var in = keystore.getInputStream()) {
+            keyStore.load(in, storePass);
+        }
+
+        var byAlias = new HashMap<String, SigningKey>();
+        var byOib = new HashMap<String, SigningKey>();
+        var protection = new PasswordProtection(keyPass);
+        for (var aliases = keyStore.aliases(); aliases.hasMoreElements(); ) {
+            var alias = aliases.nextElement();
+            if (!keyStore.entryInstanceOf(alias, PrivateKeyEntry.class)) {
+                continue;
+            }
+
+            var entry = (PrivateKeyEntry) keyStore.getEntry(alias, protection);
+            var certificate = (X509Certificate) entry.getCertificate();
+            var key = new SigningKey(alias, oib(certificate.getSubjectX500Principal()), entry.getPrivateKey(), certificate);
+            byAlias.put(alias, key);
+            if (key.oib() != null) {
+                var previous = byOib.put(key.oib(), key);
+                // two certificates of one business during a renewal: the one valid for longer wins
+                if (previous != null && previous.certificate().getNotAfter().after(certificate.getNotAfter())) {
+                    byOib.put(key.oib(), previous);
+                }
+            }
+        }
+
+        SigningKey defaultKey = null;
+        if (defaultAlias != null) {
+            defaultKey = byAlias.get(defaultAlias);
+            if (defaultKey == null) {
+                throw new IllegalArgumentException("Keystore " + keystore + " has no key with alias " + defaultAlias);
+            }
+        }
+
+        log.info("Loaded signing keys from {} for OIBs {}", keystore, byOib.keySet());
+        return new Keys(Map.copyOf(byOib), Map.copyOf(byAlias), defaultKey);
+    }
+
+    static String oib(X500Principal subject) {
+        // RFC 1779 spells the attributes as OID.2.5.4.97=VATHR-..., RFC 2253 would hex-encode them
+        var matcher = OIB_IN_SUBJECT.matcher(subject.getName(X500Principal.RFC1779));
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    public record SigningKey(String alias, String oib, PrivateKey privateKey, X509Certificate certificate) {
+    }
+
+    private record Keys(Map<String, SigningKey> byOib, Map<String, SigningKey> byAlias, SigningKey defaultKey) {
+    }
+}
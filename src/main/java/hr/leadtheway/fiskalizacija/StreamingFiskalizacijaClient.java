@@ -0,0 +1,130 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.NapojnicaOdgovor;
+import hr.leadtheway.wsdl.NapojnicaZahtjev;
+import hr.leadtheway.wsdl.PromijeniNacPlacOdgovor;
+import hr.leadtheway.wsdl.PromijeniNacPlacZahtjev;
+import hr.leadtheway.wsdl.ProvjeraOdgovor;
+import hr.leadtheway.wsdl.ProvjeraZahtjev;
+import hr.leadtheway.wsdl.RacunOdgovor;
+import hr.leadtheway.wsdl.RacunZahtjev;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.ws.Dispatch;
+import jakarta.xml.ws.WebServiceException;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.function.Function;
+
+import static hr.leadtheway.fiskalizacija.FiskalizacijaJaxb.NAMESPACE;
+import static jakarta.xml.ws.BindingProvider.SOAPACTION_URI_PROPERTY;
+import static jakarta.xml.ws.BindingProvider.SOAPACTION_USE_PROPERTY;
+
+/**
+ * Alternative to the {@code FiskalizacijaPortType} port for the hot operations. The request is
+ * marshalled and signed in one streaming pass by {@link StreamingXmlSigner} and handed to a
+ * payload-mode {@link Dispatch} as is, so no SAAJ DOM of the message is ever built.
+ */
+public class StreamingFiskalizacijaClient {
+
+    private static final String SOAP_ACTION_BASE = "http://e-porezna.porezna-uprava.hr/fiskalizacija/2012/services/FiskalizacijaService/";
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    private static final QName RACUN_ZAHTJEV = new QName(NAMESPACE, "RacunZahtjev");
+    private static final QName NAPOJNICA_ZAHTJEV = new QName(NAMESPACE, "NapojnicaZahtjev");
+    private static final QName PROMIJENI_NAC_PLAC_ZAHTJEV = new QName(NAMESPACE, "PromijeniNacPlacZahtjev");
+    private static final QName PROVJERA_ZAHTJEV = new QName(NAMESPACE, "ProvjeraZahtjev");
+
+    private final StreamingXmlSigner signer;
+    private final PortPool<Dispatch<Source>> dispatchPool;
+    private final RacunOdgovorReader odgovorReader;
+
+    public StreamingFiskalizacijaClient(StreamingXmlSigner signer, PortPool<Dispatch<Source>> dispatchPool, RacunOdgovorReader odgovorReader) {
+        this.signer = signer;
+        this.dispatchPool = dispatchPool;
+        this.odgovorReader = odgovorReader;
+    }
+
+    public RacunOdgovor racuni(RacunZahtjev zahtjev) {
+        if (zahtjev.getId() == null) {
+            zahtjev.setId(RACUN_ZAHTJEV.getLocalPart());
+        }
+        return invoke("racuni", zahtjev.getRacun().getOib(), zahtjev, RACUN_ZAHTJEV, RacunOdgovor.class);
+    }
+
+    /**
+     * Same request as {@link #racuni}, but only the JIR and the errors are read from the
+     * response, and its signature is checked against the CIS certificate.
+     */
+    public RacunOdgovorReader.Odgovor racuniJir(RacunZahtjev zahtjev) {
+        if (zahtjev.getId() == null) {
+            zahtjev.setId(RACUN_ZAHTJEV.getLocalPart());
+        }
+        return invoke("racuni", zahtjev.getRacun().getOib(), zahtjev, RACUN_ZAHTJEV, odgovorReader::read);
+    }
+
+    public NapojnicaOdgovor napojnica(NapojnicaZahtjev zahtjev) {
+        if (zahtjev.getId() == null) {
+            zahtjev.setId(NAPOJNICA_ZAHTJEV.getLocalPart());
+        }
+        return invoke("napojnica", zahtjev.getRacun().getOib(), zahtjev, NAPOJNICA_ZAHTJEV, NapojnicaOdgovor.class);
+    }
+
+    public PromijeniNacPlacOdgovor promijeniNacPlac(PromijeniNacPlacZahtjev zahtjev) {
+        if (zahtjev.getId() == null) {
+            zahtjev.setId(PROMIJENI_NAC_PLAC_ZAHTJEV.getLocalPart());
+        }
+        return invoke("promijeniNacPlac", zahtjev.getRacun().getOib(), zahtjev, PROMIJENI_NAC_PLAC_ZAHTJEV, PromijeniNacPlacOdgovor.class);
+    }
+
+    public ProvjeraOdgovor provjera(ProvjeraZahtjev zahtjev) {
+        if (zahtjev.getId() == null) {
+            zahtjev.setId(PROVJERA_ZAHTJEV.getLocalPart());
+        }
+        return invoke("provjera", zahtjev.getRacun().getOib(), zahtjev, PROVJERA_ZAHTJEV, ProvjeraOdgovor.class);
+    }
+
+    private <R> R invoke(String operation, String oib, Object zahtjev, QName root, Class<R> responseType) {
+        return invoke(operation, oib, zahtjev, root, response -> {
+            try {
+                return FiskalizacijaJaxb.CONTEXT.createUnmarshaller().unmarshal(response, responseType).getValue();
+            } catch (JAXBException ex) {
+                throw new WebServiceException("Cannot read " + responseType.getSimpleName(), ex);
+            }
+        });
+    }
+
+    private <R> R invoke(String operation, String oib, Object zahtjev, QName root, Function<Source, R> responseReader) {
+        var signed = new SignedPayload();
+        try {
+            signer.sign(oib, zahtjev, root, signed);
+        } catch (Exception ex) {
+            throw new WebServiceException("Signing " + root.getLocalPart() + " failed", ex);
+        }
+
+        return dispatchPool.execute(dispatch -> {
+            var requestContext = dispatch.getRequestContext();
+            requestContext.put(SOAPACTION_USE_PROPERTY, true);
+            requestContext.put(SOAPACTION_URI_PROPERTY, SOAP_ACTION_BASE + operation);
+
+            return responseReader.apply(dispatch.invoke(signed.toSource()));
+        });
+    }
+
+    /**
+     * Exposes the written bytes as a {@link Source} without copying them out of the buffer.
+     */
+    private static final class SignedPayload extends ByteArrayOutputStream {
+
+        private SignedPayload() {
+            super(INITIAL_BUFFER_SIZE);
+        }
+
+        private Source toSource() {
+            return new StreamSource(new ByteArrayInputStream(buf, 0, count));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package hr.leadtheway.fiskalizacija;
+
+import jakarta.xml.bind.JAXBException;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.OutboundXMLSec;
+import org.apache.xml.security.stax.ext.SecurePart;
+import org.apache.xml.security.stax.ext.XMLSec;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.ext.XMLSecurityProperties;
+import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import java.io.OutputStream;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.xml.security.stax.ext.XMLSecurityConstants.NS_C14N_EXCL_OMIT_COMMENTS;
+import static org.apache.xml.security.stax.ext.XMLSecurityConstants.NS_XMLDSIG_ENVELOPED_SIGNATURE;
+import static org.apache.xml.security.stax.ext.XMLSecurityConstants.NS_XMLDSIG_RSASHA1;
+import static org.apache.xml.security.stax.ext.XMLSecurityConstants.NS_XMLDSIG_SHA1;
+
+/**
+ * Marshals a request and signs it in the same pass, using Santuario's StAX outbound processing.
+ * Produces the same enveloped signature as {@link XmlSignatureOutboundHandler}, without building
+ * a DOM of the SOAP message.
+ */
+public class StreamingXmlSigner {
+
+    private final SigningKeys signingKeys;
+    // one prepared configuration per signing key and signed root element
+    private final Map<Prepared, OutboundXMLSec> outbound = new ConcurrentHashMap<>();
+
+    public StreamingXmlSigner(SigningKeys signingKeys) {
+        this.signingKeys = signingKeys;
+        signingKeys.addReloadListener(outbound::clear);
+    }
+
+    /**
+     * @param oib     the business the request is sent for, picks the signing key
+     * @param request a JAXB root element with its {@code Id} attribute set
+     * @param root    the element name of {@code request}, its {@code Id} is the signature reference
+     */
+    public void sign(String oib, Object request, QName root, OutputStream out) throws XMLSecurityException, XMLStreamException, JAXBException {
+        var writer = outbound(signingKeys.forOib(oib), root).processOutMessage(out, UTF_8.name());
+        FiskalizacijaJaxb.CONTEXT.createMarshaller().marshal(request, writer);
+        writer.close();
+    }
+
+    private OutboundXMLSec outbound(SigningKeys.SigningKey key, QName root) throws XMLSecurityException {
+        var cacheKey = new Prepared(key.certificate(), root);
+        var prepared = outbound.get(cacheKey);
+        if (prepared == null) {
+            var created = XMLSec.getOutboundXMLSec(properties(key, root));
+            prepared = outbound.putIfAbsent(cacheKey, created);
+            if (prepared == null) {
+                prepared = created;
+            }
+        }
+        return prepared;
+    }
+
+    private static XMLSecurityProperties properties(SigningKeys.SigningKey key, QName root) {
+        var properties = new XMLSecurityProperties();
+        properties.setActions(List.of(XMLSecurityConstants.SIGNATURE));
+        properties.setSignatureKey(key.privateKey());
+        properties.setSignatureCerts(new X509Certificate[]{key.certificate()});
+        properties.setSignatureAlgorithm(NS_XMLDSIG_RSASHA1);
+        properties.setSignatureDigestAlgorithm(NS_XMLDSIG_SHA1);
+        properties.setSignatureCanonicalizationAlgorithm(NS_C14N_EXCL_OMIT_COMMENTS);
+        properties.setSignatureKeyIdentifiers(List.of(
+                SecurityTokenConstants.KeyIdentifier_X509KeyIdentifier,
+                SecurityTokenConstants.KeyIdentifier_KeyValue
+        ));
+
+        // enveloped: <Signature> is the last child of the signed root, which keeps the existing Id
+        properties.addSignaturePart(new SecurePart(
+                root,
+                SecurePart.Modifier.Element,
+                new String[]{NS_XMLDSIG_ENVELOPED_SIGNATURE, NS_C14N_EXCL_OMIT_COMMENTS},
+                NS_XMLDSIG_SHA1
+        ));
+        properties.setSignaturePositionQName(root);
+        properties.setSignaturePositionStart(false);
+        return properties;
+    }
+
+    private record Prepared(X509Certificate certificate, QName root) {
+    }
+}
@@ -0,0 +1,216 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.FiskalizacijaPortType;
+import hr.leadtheway.wsdl.NapojnicaOdgovor;
+import hr.leadtheway.wsdl.NapojnicaZahtjev;
+import hr.leadtheway.wsdl.PromijeniNacPlacOdgovor;
+import hr.leadtheway.wsdl.PromijeniNacPlacZahtjev;
+import hr.leadtheway.wsdl.ProvjeraOdgovor;
+import hr.leadtheway.wsdl.ProvjeraZahtjev;
+import hr.leadtheway.wsdl.RacunOdgovor;
+import hr.leadtheway.wsdl.RacunZahtjev;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Routes requests of many businesses through the one pooled port. Every business (tenant) is
+ * known by its OIB and has its own token bucket and bulkhead, so a burst from one of them waits
+ * or is rejected on its own limits instead of taking every port of the pool.
+ * <p>
+ * Tenants are created on their first request and are a few objects each; their signing key
+ * comes from {@link SigningKeys}, which the port's signature handler already picks by OIB. Only
+ * an OIB with a key of its own gets a tenant, and a reload that removes the key drops it, so
+ * there are never more tenants than keys in the keystore.
+ */
+@Service
+public class TenantRouter {
+
+    private final FiskalizacijaPortType port;
+    private final SigningKeys signingKeys;
+    private final double rate;
+    private final int burst;
+    private final int maxConcurrent;
+    private final Duration maxWait;
+
+    private final Map<String, Tenant> tenants = new ConcurrentHashMap<>();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder bulkheadFull = new LongAdder();
+
+    public TenantRouter(
+            FiskalizacijaPortType fiskalizacijaPort,
+            SigningKeys signingKeys,
+            @Value("${fina.tenants.rate}") double rate,
+            @Value("${fina.tenants.burst}") int burst,
+            @Value("${fina.tenants.max-concurrent}") int maxConcurrent,
+            @Value("${fina.tenants.max-wait}") Duration maxWait
+    ) {
+        if (rate <= 0 || burst < 1 || maxConcurrent < 1) {
+            throw new IllegalArgumentException("Tenant limits must be positive");
+        }
+        this.port = fiskalizacijaPort;
+        this.signingKeys = signingKeys;
+        this.rate = rate;
+        this.burst = burst;
+        this.maxConcurrent = maxConcurrent;
+        this.maxWait = maxWait;
+        signingKeys.addReloadListener(() -> tenants.keySet().retainAll(signingKeys.oibs()));
+    }
+
+    public RacunOdgovor racuni(RacunZahtjev zahtjev) {
+        return tenant(zahtjev.getRacun().getOib()).call(() -> port.racuni(zahtjev));
+    }
+
+    public NapojnicaOdgovor napojnica(NapojnicaZahtjev zahtjev) {
+        return tenant(zahtjev.getRacun().getOib()).call(() -> port.napojnica(zahtjev));
+    }
+
+    public PromijeniNacPlacOdgovor promijeniNacPlac(PromijeniNacPlacZahtjev zahtjev) {
+        return tenant(zahtjev.getRacun().getOib()).call(() -> port.promijeniNacPlac(zahtjev));
+    }
+
+    public ProvjeraOdgovor provjera(ProvjeraZahtjev zahtjev) {
+        return tenant(zahtjev.getRacun().getOib()).call(() -> port.provjera(zahtjev));
+    }
+
+    /**
+     * @throws IllegalStateException when there is no signing key for {@code oib}
+     */
+    public Tenant tenant(String oib) {
+        if (oib == null) {
+            throw new IllegalArgumentException("A request must carry the OIB of its business");
+        }
+        var tenant = tenants.get(oib);
+        if (tenant != null) {
+            return tenant;
+        }
+
+        // fails for an OIB without a key, before anything is kept for it
+        tenant = tenants.computeIfAbsent(oib, key -> {
+            signingKeys.forOib(key);
+            return new Tenant(key);
+        });
+        // a reload that removed the key while the tenant was being added may have missed it
+        if (!signingKeys.oibs().contains(oib)) {
+            tenants.remove(oib, tenant);
+            throw new IllegalStateException("No signing key for OIB " + oib);
+        }
+        return tenant;
+    }
+
+    public Stats stats() {
+        return new Stats(tenants.size(), rateLimited.sum(), bulkheadFull.sum());
+    }
+
+    /**
+     * {@code rateLimited} and {@code bulkheadFull} count rejected requests of all tenants.
+     */
+    public record Stats(int tenants, long rateLimited, long bulkheadFull) {
+    }
+
+    /* ────────── tenant ────────── */
+
+    public final class Tenant {
+
+        private final String oib;
+        private final TokenBucket bucket = new TokenBucket(rate, burst);
+        private final Semaphore bulkhead = new Semaphore(maxConcurrent, true);
+
+        private Tenant(String oib) {
+            this.oib = oib;
+        }
+
+        public String oib() {
+            return oib;
+        }
+
+        public SigningKeys.SigningKey signingKey() {
+            return signingKeys.forOib(oib);
+        }
+
+        <R> R call(Supplier<R> call) {
+            var deadline = System.nanoTime() + maxWait.toNanos();
+
+            // 1) a token, waiting for one only if it comes within maxWait
+            var wait = bucket.reserve(maxWait.toNanos());
+            if (wait < 0) {
+                rateLimited.increment();
+                throw new IllegalStateException("Tenant " + oib + " is over its rate of " + rate + "/s");
+            }
+            // parkNanos may return early, the token is only due once the whole wait has passed
+            var due = System.nanoTime() + wait;
+            for (var left = wait; left > 0; left = due - System.nanoTime()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new IllegalStateException("Interrupted while waiting for tenant " + oib);
+                }
+                LockSupport.parkNanos(left);
+            }
+
+            // 2) a slot in the bulkhead, within what is left of maxWait
+            boolean acquired;
+            try {
+                acquired = bulkhead.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for tenant " + oib, ex);
+            }
+            if (!acquired) {
+                bulkheadFull.increment();
+                throw new IllegalStateException("Tenant " + oib + " already has " + maxConcurrent + " requests in flight");
+            }
+
+            try {
+                return call.get();
+            } finally {
+                bulkhead.release();
+            }
+        }
+    }
+
+    /**
+     * Refills continuously at {@code rate} up to {@code burst} tokens. A caller that has to wait
+     * reserves its token up front, so waiting callers are served in arrival order.
+     */
+    static final class TokenBucket {
+
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        TokenBucket(double ratePerSecond, int burst) {
+            this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = burst;
+            this.tokens = burst;
+        }
+
+        /**
+         * @return nanos to wait before the reserved token is due, {@code -1} when that is longer than {@code maxWaitNanos}
+         */
+        synchronized long reserve(long maxWaitNanos) {
+            var now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            var wait = (long) Math.ceil((1 - tokens) / tokensPerNano);
+            if (wait > maxWaitNanos) {
+                return -1;
+            }
+            // goes negative, the callers after this one wait longer
+            tokens -= 1;
+            return wait;
+        }
+    }
+}
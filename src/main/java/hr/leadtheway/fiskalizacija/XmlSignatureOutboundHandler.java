@@ -1,18 +1,26 @@
 package hr.leadtheway.fiskalizacija;
 
+import io.micrometer.observation.ObservationRegistry;
 import jakarta.xml.ws.handler.MessageContext;
 import jakarta.xml.ws.handler.soap.SOAPHandler;
 import jakarta.xml.ws.handler.soap.SOAPMessageContext;
-import lombok.RequiredArgsConstructor;
 import org.apache.xml.security.Init;
 import org.apache.xml.security.signature.XMLSignature;
 import org.apache.xml.security.transforms.Transforms;
+import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.XMLUtils;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import javax.xml.namespace.QName;
-import java.security.PrivateKey;
+import java.math.BigInteger;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static jakarta.xml.soap.SOAPConstants.URI_NS_SOAP_ENVELOPE;
 import static jakarta.xml.ws.handler.MessageContext.MESSAGE_OUTBOUND_PROPERTY;
@@ -22,15 +30,22 @@ import static org.apache.xml.security.c14n.Canonicalizer.ALGO_ID_C14N_EXCL_OMIT_
 import static org.apache.xml.security.signature.XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA1;
 import static org.apache.xml.security.transforms.Transforms.TRANSFORM_ENVELOPED_SIGNATURE;
 
-@RequiredArgsConstructor
 public class XmlSignatureOutboundHandler implements SOAPHandler<SOAPMessageContext> {
 
     static {
         Init.init();
     }
 
-    private final PrivateKey privateKey;
-    private final X509Certificate certificate;
+    private final SigningKeys signingKeys;
+    // encoded once per certificate, every message builds its KeyInfo from it in its own document
+    private final Map<X509Certificate, KeyInfoTemplate> keyInfoTemplates = new ConcurrentHashMap<>();
+    private final ObservationRegistry observationRegistry;
+
+    public XmlSignatureOutboundHandler(SigningKeys signingKeys, ObservationRegistry observationRegistry) {
+        this.signingKeys = signingKeys;
+        this.observationRegistry = observationRegistry;
+        signingKeys.addReloadListener(keyInfoTemplates::clear);
+    }
 
     @Override
     public boolean handleMessage(SOAPMessageContext ctx) {
@@ -42,49 +57,125 @@ public class XmlSignatureOutboundHandler implements SOAPHandler<SOAPMessageConte
                 // the first element inside the Body is our business root element
                 var root = (Element) body.getFirstChild();
 
-                var doc = root.getOwnerDocument();
+                Instrumentation.observe(observationRegistry, Instrumentation.SIGNATURE, root.getLocalName(), () -> sign(ctx, root));
+            } catch (Exception ex) {
+                throw new RuntimeException("XML signature creation failed", ex);
+            }
+        }
+        return true;
+    }
+
+    private Void sign(SOAPMessageContext ctx, Element root) throws Exception {
+        var doc = root.getOwnerDocument();
+        // Racun, Napojnica and PrateciDokument all start with the OIB of the business
+        var oib = root.getElementsByTagNameNS(FiskalizacijaJaxb.NAMESPACE, "Oib").item(0);
+        var signingKey = signingKeys.forOib(oib == null ? null : oib.getTextContent());
 
-                // 1) make sure the Id attribute is an XML ID
-                if (!root.hasAttribute("Id")) {
-                    root.setAttribute("Id", root.getLocalName()); // e.g. “RacunZahtjev”
-                }
-                root.setIdAttribute("Id", true);
+        // 1) make sure the Id attribute is an XML ID
+        if (!root.hasAttribute("Id")) {
+            root.setAttribute("Id", root.getLocalName()); // e.g. “RacunZahtjev”
+        }
+        root.setIdAttribute("Id", true);
+
+        // 2) build the signature
+        var sig = new XMLSignature(
+                doc,
+                "",                                              // baseURI
+                ALGO_ID_SIGNATURE_RSA_SHA1,
+                ALGO_ID_C14N_EXCL_OMIT_COMMENTS
+        );
+
+        // 3) add canonicalisation + enveloped transforms
+        var transforms = new Transforms(doc);
+        transforms.addTransform(TRANSFORM_ENVELOPED_SIGNATURE);
+        transforms.addTransform(ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+
+        sig.addDocument(
+                "#" + root.getAttribute("Id"),
+                transforms,
+                ALGO_ID_DIGEST_SHA1
+        );
+
+        // 4) embed the certificate, KeyInfo is not covered by the signature so a prepared copy will do
+        var sigElement = sig.getElement();
+        sigElement.appendChild(keyInfoTemplates.computeIfAbsent(signingKey.certificate(), KeyInfoTemplate::of).build(doc));
+        if (!XMLUtils.ignoreLineBreaks()) {
+            sigElement.appendChild(doc.createTextNode("\n"));
+        }
 
-                // 2) build the signature
-                var sig = new XMLSignature(
-                        doc,
-                        "",                                              // baseURI
-                        ALGO_ID_SIGNATURE_RSA_SHA1,
-                        ALGO_ID_C14N_EXCL_OMIT_COMMENTS
-                );
+        // 5) append the <Signature> element inside the signed root
+        root.appendChild(sig.getElement());
 
-                // 3) add canonicalisation + enveloped transforms
-                var transforms = new Transforms(doc);
-                transforms.addTransform(TRANSFORM_ENVELOPED_SIGNATURE);
-                transforms.addTransform(ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+        // 6) calculate the signature value
+        sig.sign(signingKey.privateKey());
 
-                sig.addDocument(
-                        "#" + root.getAttribute("Id"),
-                        transforms,
-                        ALGO_ID_DIGEST_SHA1
+        ctx.getMessage().saveChanges();
+        return null;
+    }
+
+    /**
+     * The certificate and RSA key of a KeyInfo, Base64 encoded once. Nothing in it changes, so
+     * threads signing with the same certificate share it without a lock, and each of them
+     * creates the elements in its own document, the same ones {@code sig.addKeyInfo(certificate)}
+     * followed by {@code sig.addKeyInfo(publicKey)} would.
+     */
+    private record KeyInfoTemplate(String certificate, String modulus, String exponent) {
+
+        private static KeyInfoTemplate of(X509Certificate certificate) {
+            if (!(certificate.getPublicKey() instanceof RSAPublicKey publicKey)) {
+                throw new IllegalArgumentException("Not an RSA certificate: " + certificate.getSubjectX500Principal());
+            }
+            try {
+                return new KeyInfoTemplate(
+                        XMLUtils.encodeToString(certificate.getEncoded()),
+                        XMLUtils.encodeToString(unsigned(publicKey.getModulus())),
+                        XMLUtils.encodeToString(unsigned(publicKey.getPublicExponent()))
                 );
+            } catch (CertificateEncodingException ex) {
+                throw new IllegalArgumentException("Cannot prepare KeyInfo for " + certificate.getSubjectX500Principal(), ex);
+            }
+        }
 
-                // 4) embed the certificate
-                sig.addKeyInfo(certificate);
-                sig.addKeyInfo(certificate.getPublicKey());
+        private Element build(Document doc) {
+            var keyInfo = dsElement(doc, Constants._TAG_KEYINFO);
+            keyInfo.setAttributeNS(Constants.NamespaceSpecNS, "xmlns:ds", Constants.SignatureSpecNS);
 
-                // 5) append the <Signature> element inside the signed root
-                root.appendChild(sig.getElement());
+            var x509Data = dsElement(doc, Constants._TAG_X509DATA);
+            append(x509Data, textElement(doc, Constants._TAG_X509CERTIFICATE, certificate));
+            append(keyInfo, x509Data);
 
-                // 6) calculate the signature value
-                sig.sign(privateKey);
+            var rsaKeyValue = dsElement(doc, Constants._TAG_RSAKEYVALUE);
+            append(rsaKeyValue, textElement(doc, Constants._TAG_MODULUS, modulus));
+            append(rsaKeyValue, textElement(doc, Constants._TAG_EXPONENT, exponent));
+            var keyValue = dsElement(doc, Constants._TAG_KEYVALUE);
+            append(keyValue, rsaKeyValue);
+            append(keyInfo, keyValue);
 
-                ctx.getMessage().saveChanges();
-            } catch (Exception ex) {
-                throw new RuntimeException("XML signature creation failed", ex);
-            }
+            return keyInfo;
+        }
+
+        private static Element dsElement(Document doc, String name) {
+            var element = XMLUtils.createElementInSignatureSpace(doc, name);
+            XMLUtils.addReturnToElement(element);
+            return element;
+        }
+
+        private static Element textElement(Document doc, String name, String text) {
+            var element = XMLUtils.createElementInSignatureSpace(doc, name);
+            element.appendChild(doc.createTextNode(text));
+            return element;
+        }
+
+        private static void append(Element parent, Element child) {
+            parent.appendChild(child);
+            XMLUtils.addReturnToElement(parent);
+        }
+
+        // ds:CryptoBinary has no sign byte
+        private static byte[] unsigned(BigInteger value) {
+            var bytes = value.toByteArray();
+            return bytes[0] == 0 && bytes.length > 1 ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes;
         }
-        return true;
     }
 
     // ---- boiler-plate ↓ ----------------------------------------------------
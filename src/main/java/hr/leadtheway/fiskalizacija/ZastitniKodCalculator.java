@@ -0,0 +1,149 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.BrojRacunaType;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Izračun zaštitnog koda izdavatelja (ZKI). Same result as {@link ZastitniKodIzracunUtils#calculate},
+ * but every thread keeps an initialized signer, a digest and the buffers for the intermediate result.
+ */
+@Component
+public class ZastitniKodCalculator {
+
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy' 'HH:mm:ss");
+    private static final String SIGNATURE_ALGORITHM = "SHA1withRSA";
+    private static final String DIGEST_ALGORITHM = "MD5";
+    private static final int INITIAL_BUFFER_SIZE = 128;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final ThreadLocal<State> state = ThreadLocal.withInitial(State::new);
+    private final ObservationRegistry observationRegistry;
+
+    public ZastitniKodCalculator(ObservationRegistry observationRegistry) {
+        this.observationRegistry = observationRegistry;
+    }
+
+    public String calculate(
+            String oib,
+            LocalDateTime datumIVrijemeIzdavanjaRacuna,
+            BrojRacunaType brRac,
+            String ukupniIznosRacuna,
+            PrivateKey privateKey
+    ) {
+        return Instrumentation.observe(observationRegistry, Instrumentation.ZKI, "calculate", () -> {
+            var st = state.get();
+            medjurezultat(st, oib, datumIVrijemeIzdavanjaRacuna, brRac).append(ukupniIznosRacuna);
+            return sign(st, privateKey);
+        });
+    }
+
+    /**
+     * Same as {@link #calculate(String, LocalDateTime, BrojRacunaType, String, PrivateKey)} with the
+     * amount written as {@code 1234.56}.
+     */
+    public String calculate(
+            String oib,
+            LocalDateTime datumIVrijemeIzdavanjaRacuna,
+            BrojRacunaType brRac,
+            Amount ukupniIznosRacuna,
+            PrivateKey privateKey
+    ) {
+        return Instrumentation.observe(observationRegistry, Instrumentation.ZKI, "calculate", () -> {
+            var st = state.get();
+            ukupniIznosRacuna.appendTo(medjurezultat(st, oib, datumIVrijemeIzdavanjaRacuna, brRac));
+            return sign(st, privateKey);
+        });
+    }
+
+    /**
+     * Everything before the amount, which is left for the caller to append.
+     */
+    private static StringBuilder medjurezultat(
+            State st,
+            String oib,
+            LocalDateTime datumIVrijemeIzdavanjaRacuna,
+            BrojRacunaType brRac
+    ) {
+        var medjurezultat = st.medjurezultat;
+        medjurezultat.setLength(0);
+        medjurezultat.append(oib);
+        DATE_TIME_FORMATTER.formatTo(datumIVrijemeIzdavanjaRacuna, medjurezultat);
+        medjurezultat.append(brRac.getBrOznRac());
+        medjurezultat.append(brRac.getOznPosPr());
+        medjurezultat.append(brRac.getOznNapUr());
+        return medjurezultat;
+    }
+
+    private static String sign(State st, PrivateKey privateKey) {
+        try {
+            var biljeznik = st.signer(privateKey);
+            biljeznik.update(st.encode(st.medjurezultat));
+            var potpisano = biljeznik.sign();
+
+            return HEX.formatHex(st.md5.digest(potpisano));
+        } catch (GeneralSecurityException e) {
+            // the signer may be half way through an update, start from initSign next time
+            st.signerKey = null;
+            throw new IllegalStateException("ZKI calculation failed", e);
+        }
+    }
+
+    private static final class State {
+
+        private final StringBuilder medjurezultat = new StringBuilder(INITIAL_BUFFER_SIZE);
+        private final CharsetEncoder encoder = UTF_8.newEncoder();
+        private ByteBuffer bytes = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+        private final Signature signer;
+        private final MessageDigest md5;
+        private PrivateKey signerKey;
+
+        private State() {
+            try {
+                this.signer = Signature.getInstance(SIGNATURE_ALGORITHM);
+                this.md5 = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("ZKI algorithms are not available", e);
+            }
+        }
+
+        private Signature signer(PrivateKey privateKey) throws GeneralSecurityException {
+            // sign() resets the signer to its initialized state, only a different key needs initSign
+            if (signerKey != privateKey) {
+                signer.initSign(privateKey);
+                signerKey = privateKey;
+            }
+            return signer;
+        }
+
+        private ByteBuffer encode(CharSequence chars) {
+            var maxBytes = (int) (chars.length() * encoder.maxBytesPerChar());
+            if (bytes.capacity() < maxBytes) {
+                bytes = ByteBuffer.allocate(maxBytes);
+            }
+
+            bytes.clear();
+            encoder.reset();
+            var result = encoder.encode(CharBuffer.wrap(chars), bytes, true);
+            if (result.isError()) {
+                throw new IllegalArgumentException("ZKI input is not valid text: " + result);
+            }
+            encoder.flush(bytes);
+            return bytes.flip();
+        }
+    }
+}
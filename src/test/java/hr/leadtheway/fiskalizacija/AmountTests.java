@@ -0,0 +1,48 @@
+package hr.leadtheway.fiskalizacija;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AmountTests {
+
+	@Test
+	void readsAndWritesCisAmounts() {
+		assertThat(Amount.parse("1234.56").cents()).isEqualTo(123456);
+		assertThat(Amount.parse("12.5").cents()).isEqualTo(1250);
+		assertThat(Amount.parse("7").cents()).isEqualTo(700);
+		assertThat(Amount.parse("-0.05").cents()).isEqualTo(-5);
+
+		assertThat(Amount.ofCents(123456)).hasToString("1234.56");
+		assertThat(Amount.ofCents(-5)).hasToString("-0.05");
+		assertThat(Amount.ZERO).hasToString("0.00");
+	}
+
+	@Test
+	void rejectsWhatWouldBeRounded() {
+		for (var text : new String[]{"", "-", "1.", ".5", "1.005", "1,50", "12a"}) {
+			assertThatThrownBy(() -> Amount.parse(text)).isInstanceOf(IllegalArgumentException.class);
+		}
+	}
+
+	@Test
+	void roundsTaxHalfAwayFromZero() {
+		var rate = Amount.parse("25.00");
+
+		assertThat(rate.percentOf(Amount.parse("800.00"))).isEqualTo(Amount.parse("200.00"));
+		assertThat(rate.percentOf(Amount.parse("0.10"))).isEqualTo(Amount.parse("0.03"));
+		assertThat(rate.percentOf(Amount.parse("-0.10"))).isEqualTo(Amount.parse("-0.03"));
+		assertThat(Amount.parse("13.00").percentOf(Amount.parse("207.58"))).isEqualTo(Amount.parse("26.99"));
+	}
+
+	@Test
+	void qrCarriesCentsWithoutSeparator() {
+		var qrData = PdfReceiptGenerator.buildQrData("8f1c2a3b-4d5e-4f60-8a7b-9c0d1e2f3a4b", null,
+				LocalDateTime.of(2025, 6, 1, 12, 30, 15), Amount.parse("12.5"));
+
+		assertThat(qrData).isEqualTo("https://porezna.gov.hr/rn?jir=8f1c2a3b-4d5e-4f60-8a7b-9c0d1e2f3a4b&datv=20250601_1230&izn=1250");
+	}
+}
@@ -0,0 +1,72 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.fiskalizacija.PdfReceiptGenerator.InvoiceItem;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EscPosReceiptRendererTests {
+
+	private static final Charset PC852 = Charset.forName("IBM852");
+
+	private final EscPosReceiptRenderer renderer = new EscPosReceiptRenderer(48);
+
+	@Test
+	void printsCroatianLettersAndNativeQrCode() {
+		var receipt = TestFixtures.receipt(1, 3);
+		var out = new EscPosReceiptRenderer.Buffer();
+
+		renderer.render(receipt, out);
+
+		var printed = new String(out.toByteArray(), PC852);
+		assertThat(printed)
+				.startsWith("\u001B@\u001Bt\u0012")
+				.contains("Artikl 1 - čokolada")
+				.contains("Način plaćanja: Kartica")
+				.endsWith("\u001DVB\u0003");
+
+		var qrData = PdfReceiptGenerator.buildQrData(receipt.jir(), receipt.zki(), receipt.datumIVrijeme(), receipt.iznosUkupno());
+		var length = qrData.length() + 3;
+		assertThat(new String(out.toByteArray(), ISO_8859_1))
+				.contains("\u001D(k" + (char) (length & 0xFF) + (char) (length >>> 8) + "1P0" + qrData)
+				.contains("\u001D(k\u0003\u00001Q0");
+	}
+
+	@Test
+	void plainTextKeepsLinesWithinColumns() {
+		var receipt = TestFixtures.receipt(1, 3).toBuilder()
+				.items(List.of(new InvoiceItem("Vrlo dugačak opis artikla koji ne stane u jedan redak", 2, Amount.parse("10.00"), Amount.parse("25.00"))))
+				.iznosUkupno(Amount.parse("12.50"))
+				.build();
+		var out = new EscPosReceiptRenderer.Buffer();
+
+		renderer.renderText(receipt, out);
+
+		var text = new String(out.toByteArray(), UTF_8);
+		assertThat(text.lines()).allSatisfy(line -> assertThat(line).hasSizeLessThanOrEqualTo(48));
+		assertThat(text)
+				.contains("Vrlo dugačak opis artikla        2     10.00 EUR\n")
+				.contains("  Porez 25.00 %                         2.50 EUR\n")
+				.contains("Ukupan iznos poreza:                    2.50 EUR\n")
+				.contains("Ukupan iznos za plaćanje:              12.50 EUR\n")
+				.contains("https://porezna.gov.hr/rn?jir=")
+				.doesNotContain("\u001B");
+	}
+
+	@Test
+	void receiptTextCannotSendPrinterCommands() {
+		var receipt = TestFixtures.receipt(1, 1).toBuilder()
+				.items(List.of(new InvoiceItem("Kava\u001DV\u0000", 1, Amount.parse("1.50"), null)))
+				.build();
+		var out = new EscPosReceiptRenderer.Buffer();
+
+		renderer.render(receipt, out);
+
+		assertThat(new String(out.toByteArray(), PC852)).contains("Kava V ");
+	}
+}
@@ -0,0 +1,159 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.NacinPlacanjaType;
+import hr.leadtheway.wsdl.NaknadaType;
+import hr.leadtheway.wsdl.NaknadeType;
+import hr.leadtheway.wsdl.NapojnicaType;
+import hr.leadtheway.wsdl.NapojnicaZahtjev;
+import hr.leadtheway.wsdl.OstaliPoreziType;
+import hr.leadtheway.wsdl.PdvType;
+import hr.leadtheway.wsdl.PorezNaPotrosnjuType;
+import hr.leadtheway.wsdl.PorezOstaloType;
+import hr.leadtheway.wsdl.PorezType;
+import hr.leadtheway.wsdl.PromijeniNacPlacZahtjev;
+import hr.leadtheway.wsdl.RacunNapojnicaType;
+import hr.leadtheway.wsdl.RacunPNPType;
+import hr.leadtheway.wsdl.RacunZahtjev;
+import org.apache.xml.security.Init;
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.xml.security.c14n.Canonicalizer.ALGO_ID_C14N_EXCL_OMIT_COMMENTS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The writer must produce what JAXB produces. Both outputs are compared after exclusive C14N,
+ * which is exactly what the request signature is computed over.
+ */
+class FiskalizacijaXmlWriterTests {
+
+	private final FiskalizacijaXmlWriter writer = new FiskalizacijaXmlWriter();
+
+	@BeforeAll
+	static void initXmlSec() {
+		Init.init();
+	}
+
+	@Test
+	void racunZahtjevMatchesJaxb() throws Exception {
+		assertSameAsJaxb(TestFixtures.racunZahtjev(1234), writer.write(TestFixtures.racunZahtjev(1234)).toByteArray());
+	}
+
+	@Test
+	void racunZahtjevWithAllOptionalFieldsMatchesJaxb() throws Exception {
+		var zahtjev = TestFixtures.racunZahtjev(77);
+		zahtjev.setRacun(zahtjev.getRacun().toBuilder()
+				.pnp(PorezNaPotrosnjuType.builder()
+						.porez(List.of(PorezType.builder().stopa("3.00").osnovica("100.00").iznos("3.00").build()))
+						.build())
+				.ostaliPor(OstaliPoreziType.builder()
+						.porez(List.of(PorezOstaloType.builder()
+								.naziv("Porez na luksuz & \"ostalo\" <čćžšđ>")
+								.stopa("15.00").osnovica("10.00").iznos("1.50")
+								.build()))
+						.build())
+				.iznosOslobPdv("12.00")
+				.iznosMarza("13.00")
+				.iznosNePodlOpor("14.00")
+				.naknade(NaknadeType.builder()
+						.naknada(List.of(NaknadaType.builder().nazivN("Povratna naknada 🥤").iznosN("0.50").build()))
+						.build())
+				.nakDost(true)
+				.paragonBrRac("123/456/1")
+				.specNamj("Ključ")
+				.build());
+
+		assertSameAsJaxb(zahtjev, writer.write(zahtjev).toByteArray());
+	}
+
+	@Test
+	void napojnicaZahtjevMatchesJaxb() throws Exception {
+		var racun = TestFixtures.racunZahtjev(5).getRacun();
+		var zahtjev = NapojnicaZahtjev.builder()
+				.id("NapojnicaZahtjev")
+				.zaglavlje(TestFixtures.racunZahtjev(5).getZaglavlje())
+				.racun(RacunNapojnicaType.builder()
+						.oib(racun.getOib())
+						.uSustPdv(racun.isUSustPdv())
+						.datVrijeme(racun.getDatVrijeme())
+						.oznSlijed(racun.getOznSlijed())
+						.brRac(racun.getBrRac())
+						.pdv(racun.getPdv())
+						.iznosUkupno(racun.getIznosUkupno())
+						.nacinPlac(racun.getNacinPlac())
+						.oibOper(racun.getOibOper())
+						.zastKod(racun.getZastKod())
+						.nakDost(false)
+						.prateciDokument(RacunNapojnicaType.PrateciDokument.builder()
+								.jirPD("8f1c2a3b-4d5e-4f60-8a7b-9c0d1e2f3a4b")
+								.build())
+						.napojnica(NapojnicaType.builder()
+								.iznosNapojnice("5.00")
+								.nacinPlacanjaNapojnice(NacinPlacanjaType.G)
+								.build())
+						.build())
+				.build();
+
+		assertSameAsJaxb(zahtjev, writer.write(zahtjev).toByteArray());
+	}
+
+	@Test
+	void promijeniNacPlacZahtjevMatchesJaxb() throws Exception {
+		var racun = TestFixtures.racunZahtjev(6).getRacun();
+		var zahtjev = PromijeniNacPlacZahtjev.builder()
+				.id("PromijeniNacPlacZahtjev")
+				.zaglavlje(TestFixtures.racunZahtjev(6).getZaglavlje())
+				.racun(RacunPNPType.builder()
+						.oib(racun.getOib())
+						.uSustPdv(false)
+						.datVrijeme(racun.getDatVrijeme())
+						.oznSlijed(racun.getOznSlijed())
+						.brRac(racun.getBrRac())
+						.pdv(PdvType.builder().porez(racun.getPdv().getPorez()).build())
+						.iznosUkupno(racun.getIznosUkupno())
+						.nacinPlac(NacinPlacanjaType.G)
+						.oibOper(racun.getOibOper())
+						.zastKod(racun.getZastKod())
+						.nakDost(false)
+						.promijenjeniNacinPlac(NacinPlacanjaType.K)
+						.build())
+				.build();
+
+		assertSameAsJaxb(zahtjev, writer.write(zahtjev).toByteArray());
+	}
+
+	@Test
+	void bufferIsReusedBetweenRequests() throws Exception {
+		var porezi = new ArrayList<>(Collections.nCopies(200,
+				PorezType.builder().stopa("5.00").osnovica("1.00").iznos("0.05").build()));
+		var large = TestFixtures.racunZahtjev(1);
+		large.getRacun().setPdv(PdvType.builder().porez(porezi).build());
+		writer.write(large);
+
+		var small = TestFixtures.racunZahtjev(2);
+		assertSameAsJaxb(small, writer.write(small).toByteArray());
+	}
+
+	private static void assertSameAsJaxb(Object zahtjev, byte[] written) throws Exception {
+		assertThat(canonical(written)).isEqualTo(canonical(FiskalizacijaJaxb.marshal(zahtjev)));
+	}
+
+	private static String canonical(byte[] xml) throws Exception {
+		var factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		var doc = factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+
+		var out = new ByteArrayOutputStream();
+		Canonicalizer.getInstance(ALGO_ID_C14N_EXCL_OMIT_COMMENTS).canonicalizeSubtree(doc.getDocumentElement(), out);
+		return out.toString(UTF_8);
+	}
+}
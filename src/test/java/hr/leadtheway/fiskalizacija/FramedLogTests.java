@@ -0,0 +1,177 @@
+package hr.leadtheway.fiskalizacija;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FramedLogTests {
+
+	private static final int MAX_RECORD_SIZE = 1024;
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void failedAppendDoesNotHideLaterRecords() throws Exception {
+		var file = dir.resolve("framed.log");
+		var channel = new FailingChannels();
+		try (var log = FramedLog.open(file, false, MAX_RECORD_SIZE, body -> {}, channel)) {
+			log.append(body("first"));
+			var intact = log.size();
+
+			channel.failNextWrite = true;
+			assertThatThrownBy(() -> log.append(body("second"))).isInstanceOf(IOException.class);
+			assertThat(log.size()).isEqualTo(intact);
+
+			log.append(body("third"));
+		}
+
+		var replayed = new ArrayList<String>();
+		try (var log = FramedLog.open(file, false, MAX_RECORD_SIZE, collect(replayed))) {
+			assertThat(replayed).containsExactly("first", "third");
+			assertThat(log.size()).isEqualTo(Files.size(file));
+		}
+	}
+
+	private static ByteBuffer body(String text) {
+		return ByteBuffer.wrap(text.getBytes(UTF_8));
+	}
+
+	private static Consumer<ByteBuffer> collect(List<String> bodies) {
+		return body -> bodies.add(UTF_8.decode(body).toString());
+	}
+
+	/**
+	 * Wraps the log's channel, the write after {@link #failNextWrite} is set stores a few bytes
+	 * of the record and fails like a full disk would.
+	 */
+	private static final class FailingChannels implements UnaryOperator<FileChannel> {
+
+		boolean failNextWrite;
+
+		@Override
+		public FileChannel apply(FileChannel channel) {
+			return new FailingFileChannel(channel);
+		}
+
+		private final class FailingFileChannel extends FileChannel {
+
+			private final FileChannel delegate;
+
+			FailingFileChannel(FileChannel delegate) {
+				this.delegate = delegate;
+			}
+
+			@Override
+			public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+				if (failNextWrite) {
+					failNextWrite = false;
+					var torn = srcs[offset].duplicate();
+					torn.limit(torn.position() + Math.min(torn.remaining(), 3));
+					delegate.write(torn);
+					throw new IOException("No space left on device");
+				}
+				return delegate.write(srcs, offset, length);
+			}
+
+			@Override
+			public int write(ByteBuffer src) throws IOException {
+				return (int) write(new ByteBuffer[]{src}, 0, 1);
+			}
+
+			@Override
+			public int read(ByteBuffer dst) throws IOException {
+				return delegate.read(dst);
+			}
+
+			@Override
+			public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+				return delegate.read(dsts, offset, length);
+			}
+
+			@Override
+			public long position() throws IOException {
+				return delegate.position();
+			}
+
+			@Override
+			public FileChannel position(long newPosition) throws IOException {
+				delegate.position(newPosition);
+				return this;
+			}
+
+			@Override
+			public long size() throws IOException {
+				return delegate.size();
+			}
+
+			@Override
+			public FileChannel truncate(long size) throws IOException {
+				delegate.truncate(size);
+				return this;
+			}
+
+			@Override
+			public void force(boolean metaData) throws IOException {
+				delegate.force(metaData);
+			}
+
+			@Override
+			public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+				return delegate.transferTo(position, count, target);
+			}
+
+			@Override
+			public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+				return delegate.transferFrom(src, position, count);
+			}
+
+			@Override
+			public int read(ByteBuffer dst, long position) throws IOException {
+				return delegate.read(dst, position);
+			}
+
+			@Override
+			public int write(ByteBuffer src, long position) throws IOException {
+				return delegate.write(src, position);
+			}
+
+			@Override
+			public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+				return delegate.map(mode, position, size);
+			}
+
+			@Override
+			public FileLock lock(long position, long size, boolean shared) throws IOException {
+				return delegate.lock(position, size, shared);
+			}
+
+			@Override
+			public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+				return delegate.tryLock(position, size, shared);
+			}
+
+			@Override
+			protected void implCloseChannel() throws IOException {
+				delegate.close();
+			}
+		}
+	}
+}
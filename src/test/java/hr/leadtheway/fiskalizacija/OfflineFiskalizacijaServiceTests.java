@@ -0,0 +1,80 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.FiskalizacijaPortType;
+import jakarta.xml.ws.WebServiceException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.lang.reflect.Proxy;
+import java.net.ConnectException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The dispatcher never polls here, its wake-up is replaced by a round that claims right away.
+ */
+class OfflineFiskalizacijaServiceTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void wokenDispatcherKeepsItsClaim() throws Exception {
+		try (var journal = OfflineJournal.open(dir.resolve("journal.log"), false)) {
+			var port = failingPort(new WebServiceException(new ConnectException("Connection refused")));
+			var claimed = new ArrayList<Boolean>();
+			var dispatcher = dispatcher(port, journal, claimed);
+			try {
+				var result = new OfflineFiskalizacijaService(port, journal, dispatcher).racuni(TestFixtures.racunZahtjev(1));
+
+				assertThat(result.pending()).isTrue();
+				assertThat(claimed).containsExactly(true);
+				// the live call returned, the entry is still the dispatcher's
+				assertThat(journal.claim(journal.pending().getFirst().seq())).isFalse();
+			} finally {
+				dispatcher.close();
+			}
+		}
+	}
+
+	@Test
+	void failureOtherThanTransportParksEntry() throws Exception {
+		try (var journal = OfflineJournal.open(dir.resolve("journal.log"), false)) {
+			var port = failingPort(new IllegalArgumentException("Cannot marshal RacunZahtjev"));
+			var claimed = new ArrayList<Boolean>();
+			var dispatcher = dispatcher(port, journal, claimed);
+			try {
+				var service = new OfflineFiskalizacijaService(port, journal, dispatcher);
+
+				assertThatThrownBy(() -> service.racuni(TestFixtures.racunZahtjev(1))).isInstanceOf(IllegalArgumentException.class);
+				assertThat(journal.pending()).isEmpty();
+				assertThat(journal.rejected()).hasSize(1);
+				assertThat(claimed).isEmpty();
+			} finally {
+				dispatcher.close();
+			}
+		}
+	}
+
+	private static OfflineDispatcher dispatcher(FiskalizacijaPortType port, OfflineJournal journal, List<Boolean> claimed) {
+		return new OfflineDispatcher(port, journal, 1, Duration.ofMinutes(1), Duration.ofSeconds(1), Duration.ofMinutes(1), DataSize.ofMegabytes(1)) {
+			@Override
+			public void wakeUp() {
+				journal.pending().forEach(entry -> claimed.add(journal.claim(entry.seq())));
+			}
+		};
+	}
+
+	private static FiskalizacijaPortType failingPort(RuntimeException failure) {
+		return (FiskalizacijaPortType) Proxy.newProxyInstance(OfflineFiskalizacijaServiceTests.class.getClassLoader(),
+				new Class<?>[]{FiskalizacijaPortType.class}, (self, method, args) -> {
+					throw failure;
+				});
+	}
+}
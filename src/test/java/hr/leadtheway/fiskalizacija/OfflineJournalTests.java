@@ -0,0 +1,120 @@
+package hr.leadtheway.fiskalizacija;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OfflineJournalTests {
+
+	private static final String ZKI = "e4d909c290d0fb1ca068ffaddf22cbd0";
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void replaysPendingEntriesAfterReopen() throws Exception {
+		var file = dir.resolve("journal.log");
+		try (var journal = OfflineJournal.open(file, true)) {
+			var first = journal.append(ZKI, "<first/>".getBytes(UTF_8));
+			journal.append(ZKI, "<second/>".getBytes(UTF_8));
+			journal.markDone(first);
+		}
+
+		try (var journal = OfflineJournal.open(file, true)) {
+			assertThat(journal.pending())
+					.singleElement()
+					.satisfies(entry -> {
+						assertThat(entry.seq()).isEqualTo(2);
+						assertThat(entry.zastKod()).isEqualTo(ZKI);
+						assertThat(new String(entry.request(), UTF_8)).isEqualTo("<second/>");
+					});
+			assertThat(journal.append(ZKI, "<third/>".getBytes(UTF_8))).isEqualTo(3);
+		}
+	}
+
+	@Test
+	void cutsOffTornTail() throws Exception {
+		var file = dir.resolve("journal.log");
+		try (var journal = OfflineJournal.open(file, false)) {
+			journal.append(ZKI, "<first/>".getBytes(UTF_8));
+		}
+		var intact = Files.size(file);
+		Files.write(file, new byte[]{0, 0, 0, 42, 1, 2, 3}, StandardOpenOption.APPEND);
+
+		try (var journal = OfflineJournal.open(file, false)) {
+			assertThat(journal.pending()).hasSize(1);
+			assertThat(journal.size()).isEqualTo(intact);
+		}
+	}
+
+	@Test
+	void compactionKeepsOnlyPendingEntries() throws Exception {
+		var file = dir.resolve("journal.log");
+		try (var journal = OfflineJournal.open(file, false)) {
+			for (var i = 0; i < 10; i++) {
+				var seq = journal.append(ZKI, ("<r" + i + "/>").getBytes(UTF_8));
+				if (i != 7) {
+					journal.markDone(seq);
+				}
+			}
+			var before = journal.size();
+			journal.compact();
+			assertThat(journal.size()).isLessThan(before);
+			journal.append(ZKI, "<after/>".getBytes(UTF_8));
+		}
+
+		try (var journal = OfflineJournal.open(file, false)) {
+			assertThat(journal.pending()).extracting(OfflineJournal.Entry::seq).containsExactly(8L, 11L);
+		}
+	}
+
+	@Test
+	void appendedEntryIsClaimedUntilReleased() throws Exception {
+		try (var journal = OfflineJournal.open(dir.resolve("journal.log"), false)) {
+			var seq = journal.append(ZKI, "<first/>".getBytes(UTF_8));
+			assertThat(journal.claim(seq)).isFalse();
+
+			journal.release(seq);
+			assertThat(journal.claim(seq)).isTrue();
+			assertThat(journal.claim(seq)).isFalse();
+
+			journal.release(seq);
+			journal.markDone(seq);
+			assertThat(journal.claim(seq)).isFalse();
+		}
+	}
+
+	@Test
+	void rejectedEntriesSurviveReplayAndCompaction() throws Exception {
+		var file = dir.resolve("journal.log");
+		try (var journal = OfflineJournal.open(file, false)) {
+			for (var i = 0; i < 5; i++) {
+				var seq = journal.append(ZKI, ("<r" + i + "/>").getBytes(UTF_8));
+				if (i == 1) {
+					journal.markRejected(seq);
+				} else if (i != 3) {
+					journal.markDone(seq);
+				}
+			}
+			assertThat(journal.reclaimable()).isPositive();
+			journal.compact();
+			assertThat(journal.reclaimable()).isZero();
+		}
+
+		try (var journal = OfflineJournal.open(file, false)) {
+			assertThat(journal.pending()).extracting(OfflineJournal.Entry::seq).containsExactly(4L);
+			assertThat(journal.rejected()).extracting(OfflineJournal.Entry::seq).containsExactly(2L);
+			assertThat(journal.reclaimable()).isZero();
+
+			journal.markDone(2);
+			assertThat(journal.rejected()).isEmpty();
+			assertThat(journal.claim(2)).isFalse();
+		}
+	}
+}
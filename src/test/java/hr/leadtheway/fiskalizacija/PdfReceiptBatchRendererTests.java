@@ -0,0 +1,108 @@
+package hr.leadtheway.fiskalizacija;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PdfReceiptBatchRendererTests {
+
+	@TempDir
+	Path dir;
+
+	private PdfReceiptGenerator generator;
+	private PdfReceiptBatchRenderer renderer;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		generator = TestFixtures.pdfReceiptGenerator();
+		renderer = new PdfReceiptBatchRenderer(generator, "virtual", 4, 10);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		renderer.close();
+		generator.close();
+	}
+
+	@Test
+	void rendersEveryReceiptInParallel() throws Exception {
+		var report = renderer.renderToDirectory(LongStream.rangeClosed(1, 40).mapToObj(i -> TestFixtures.receipt(i, 5)), dir, progress -> {
+		});
+
+		assertThat(report.progress().rendered()).isEqualTo(40);
+		assertThat(report.failures()).isEmpty();
+		try (var files = Files.list(dir)) {
+			assertThat(files.map(file -> file.getFileName().toString()))
+					.hasSize(40)
+					.contains("racun-1-POS1-1.pdf", "racun-40-POS1-1.pdf")
+					.noneMatch(name -> name.endsWith(".part"));
+		}
+	}
+
+	@Test
+	void failedReceiptIsReportedAndLeavesNoFile() throws Exception {
+		var receipts = LongStream.rangeClosed(1, 20)
+				.mapToObj(i -> i % 7 == 0 ? TestFixtures.receipt(i, 5).toBuilder().items(null).build() : TestFixtures.receipt(i, 5));
+
+		var report = renderer.renderToDirectory(receipts, dir, progress -> {
+		});
+
+		assertThat(report.progress().rendered()).isEqualTo(18);
+		assertThat(report.progress().failed()).isEqualTo(2);
+		assertThat(report.failures())
+				.extracting(PdfReceiptBatchRenderer.BatchFailure::brojFakture)
+				.containsExactlyInAnyOrder("7/POS1/1", "14/POS1/1");
+		assertThat(dir.resolve("racun-7-POS1-1.pdf")).doesNotExist();
+		try (var files = Files.list(dir)) {
+			assertThat(files.map(file -> file.getFileName().toString()))
+					.hasSize(18)
+					.noneMatch(name -> name.endsWith(".part"));
+		}
+	}
+
+	@Test
+	void receiptsSharingFileNameDoNotShareTemporaryFile() throws Exception {
+		var report = renderer.renderToDirectory(LongStream.rangeClosed(1, 20).mapToObj(i -> TestFixtures.receipt(1, 5)), dir, progress -> {
+		});
+
+		assertThat(report.progress().rendered()).isEqualTo(20);
+		assertThat(report.failures()).isEmpty();
+		try (var files = Files.list(dir)) {
+			assertThat(files.map(file -> file.getFileName().toString())).containsExactly("racun-1-POS1-1.pdf");
+		}
+	}
+
+	@Test
+	void reportsEachIntervalOnceAndNeverConcurrently() throws Exception {
+		var reported = new CopyOnWriteArrayList<Long>();
+		var concurrent = new AtomicInteger();
+		var overlaps = new AtomicInteger();
+
+		renderer.renderToDirectory(LongStream.rangeClosed(1, 50).mapToObj(i -> TestFixtures.receipt(i, 5)), dir, progress -> {
+			if (concurrent.incrementAndGet() > 1) {
+				overlaps.incrementAndGet();
+			}
+			reported.add(progress.rendered() + progress.failed());
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			concurrent.decrementAndGet();
+		});
+
+		assertThat(overlaps).hasValue(0);
+		assertThat(reported).hasSize(6);
+		assertThat(reported.subList(0, reported.size() - 1)).containsExactlyInAnyOrder(10L, 20L, 30L, 40L, 50L);
+		assertThat(reported.getLast()).isEqualTo(50L);
+	}
+}
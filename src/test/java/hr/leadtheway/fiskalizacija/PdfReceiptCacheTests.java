@@ -0,0 +1,82 @@
+package hr.leadtheway.fiskalizacija;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PdfReceiptCacheTests {
+
+	private static final String JIR = "8f1c2a3b-4d5e-4f60-8a7b-9c0d1e2f3a4b";
+	private static final String ZKI = "e4d909c290d0fb1ca068ffaddf22cbd0";
+	private static final String SOURCE = PdfReceiptCache.source("{\"jir\":\"" + JIR + "\"}".getBytes());
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void sameReceiptRendersSameBytes() throws Exception {
+		var generator = TestFixtures.pdfReceiptGenerator();
+		var receipt = TestFixtures.receipt(1, 30);
+
+		var first = new ByteArrayOutputStream();
+		generator.generatePdf(receipt, first);
+		Thread.sleep(1100);
+		var second = new ByteArrayOutputStream();
+		generator.generatePdf(receipt, second);
+
+		assertThat(second.toByteArray()).isEqualTo(first.toByteArray());
+	}
+
+	@Test
+	void servesStoredPdfWithSameEtagAfterReopen() throws Exception {
+		var pdf = "%PDF-1.4 receipt".getBytes();
+		var etag = PdfReceiptCache.open(dir, 1024).put(JIR, SOURCE, pdf, pdf.length);
+
+		var cached = PdfReceiptCache.open(dir, 1024).get(JIR);
+		try (var in = cached.in()) {
+			assertThat(in.readAllBytes()).isEqualTo(pdf);
+		}
+		assertThat(cached.etag()).isEqualTo(etag).startsWith("\"");
+	}
+
+	@Test
+	void sourceMustMatchWhenGiven() throws Exception {
+		var pdf = "%PDF-1.4 receipt".getBytes();
+		var other = PdfReceiptCache.source("{\"jir\":\"other\"}".getBytes());
+		var cache = PdfReceiptCache.open(dir, 1024);
+		cache.put(JIR, SOURCE, pdf, pdf.length);
+
+		assertThat(cache.get(JIR, SOURCE)).isNotNull();
+		assertThat(cache.get(JIR, other)).isNull();
+		assertThat(cache.get(JIR)).isNotNull();
+
+		var reopened = PdfReceiptCache.open(dir, 1024);
+		assertThat(reopened.get(JIR, SOURCE)).isNull();
+		assertThat(reopened.get(JIR)).isNotNull();
+	}
+
+	@Test
+	void evictsLeastRecentlyServedBeyondMaxSize() throws Exception {
+		var cache = PdfReceiptCache.open(dir, 20);
+		var pdf = new byte[10];
+
+		cache.put(JIR, SOURCE, pdf, pdf.length);
+		cache.put(ZKI, SOURCE, pdf, pdf.length);
+		cache.get(JIR).in().close();
+		cache.put("0123456789abcdef0123456789abcdef", SOURCE, pdf, pdf.length);
+
+		assertThat(cache.get(ZKI)).isNull();
+		assertThat(cache.get(JIR)).isNotNull();
+		assertThat(cache.stats()).isEqualTo(new PdfReceiptCache.Stats(2, 20));
+		assertThat(dir.resolve(ZKI + ".pdf")).doesNotExist();
+	}
+
+	@Test
+	void rejectsKeysThatAreNotJirOrZki() throws Exception {
+		assertThat(PdfReceiptCache.open(dir, 1024).get("../application")).isNull();
+	}
+}
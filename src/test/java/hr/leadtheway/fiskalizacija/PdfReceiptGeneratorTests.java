@@ -0,0 +1,108 @@
+package hr.leadtheway.fiskalizacija;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PdfReceiptGeneratorTests {
+
+	private static final Pattern ITEM = Pattern.compile("Artikl (\\d+) ");
+	private static final Pattern PRIJENOS = Pattern.compile("Prijenos\\s+(-?\\d+\\.\\d{2}) EUR");
+	private static final Pattern DONOS = Pattern.compile("Donos\\s+(-?\\d+\\.\\d{2}) EUR");
+
+	@Test
+	void longTableCarriesSubtotalsAcrossPages() throws Exception {
+		var generator = TestFixtures.pdfReceiptGenerator();
+		var receipt = TestFixtures.receipt(1, 120);
+
+		var pages = pageTexts(generator, receipt);
+
+		assertThat(pages).hasSizeGreaterThan(2);
+		var carried = Amount.ZERO;
+		var lastItem = 0;
+		for (var i = 0; i < pages.size(); i++) {
+			var page = pages.get(i);
+			if (i > 0 && ITEM.matcher(page).find()) {
+				assertThat(amount(DONOS, page)).as("Donos on page %d", i + 1).isEqualTo(carried);
+			}
+
+			var items = ITEM.matcher(page);
+			while (items.find()) {
+				var item = Integer.parseInt(items.group(1));
+				assertThat(item).isEqualTo(lastItem + 1);
+				carried = carried.plus(receipt.items().get(item - 1).netAmount());
+				lastItem = item;
+			}
+
+			if (lastItem < receipt.items().size()) {
+				assertThat(amount(PRIJENOS, page)).as("Prijenos on page %d", i + 1).isEqualTo(carried);
+			} else {
+				assertThat(page).doesNotContain("Prijenos");
+			}
+		}
+
+		assertThat(lastItem).isEqualTo(120);
+		assertThat(carried).isEqualTo(receipt.iznosUkupno());
+		assertThat(pages.getLast())
+				.contains("Ukupan neto iznos: " + receipt.iznosUkupno() + " EUR")
+				.contains("Ukupan iznos za plaćanje: " + receipt.iznosUkupno() + " EUR");
+	}
+
+	/**
+	 * Around the item counts that fill a page, the closing block either fits below the table or
+	 * moves to a page of its own, it is never split.
+	 */
+	@Test
+	void closingBlockStaysOnOnePage() throws Exception {
+		var generator = TestFixtures.pdfReceiptGenerator();
+
+		for (var itemCount = 20; itemCount <= 45; itemCount++) {
+			var receipt = TestFixtures.receipt(1, itemCount);
+			var pages = pageTexts(generator, receipt);
+
+			var last = pages.getLast();
+			assertThat(last)
+					.as("last page of %d items", itemCount)
+					.contains("Ukupan neto iznos: " + receipt.iznosUkupno() + " EUR")
+					.contains("Ukupan iznos za plaćanje: " + receipt.iznosUkupno() + " EUR")
+					.contains(receipt.legalNotice())
+					.contains("JIR: " + receipt.jir())
+					.contains("ZKI: " + receipt.zki())
+					.contains("Račun izdao: " + receipt.operatorCode());
+			for (var page : pages.subList(0, pages.size() - 1)) {
+				assertThat(page).as("earlier page of %d items", itemCount)
+						.doesNotContain("Ukupan neto iznos", "JIR: ", "Račun izdao");
+			}
+		}
+	}
+
+	private static List<String> pageTexts(PdfReceiptGenerator generator, Receipt receipt) throws Exception {
+		var out = new ByteArrayOutputStream();
+		generator.generatePdf(receipt, out);
+
+		try (var doc = Loader.loadPDF(out.toByteArray())) {
+			var stripper = new PDFTextStripper();
+			stripper.setSortByPosition(true);
+			var pages = new ArrayList<String>();
+			for (var page = 1; page <= doc.getNumberOfPages(); page++) {
+				stripper.setStartPage(page);
+				stripper.setEndPage(page);
+				pages.add(stripper.getText(doc));
+			}
+			return pages;
+		}
+	}
+
+	private static Amount amount(Pattern pattern, String page) {
+		var matcher = pattern.matcher(page);
+		assertThat(matcher.find()).as("%s in%n%s", pattern, page).isTrue();
+		return Amount.parse(matcher.group(1));
+	}
+}
@@ -0,0 +1,71 @@
+package hr.leadtheway.fiskalizacija;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PortPoolTests {
+
+	private final AtomicInteger created = new AtomicInteger();
+
+	@Test
+	void exhaustedPoolTimesOut() {
+		var pool = new PortPool<>(Echo.class, 1, Duration.ofMillis(50), this::echo);
+		pool.borrow();
+
+		var start = System.nanoTime();
+		assertThatThrownBy(pool::borrow)
+				.isInstanceOf(PortPool.BorrowTimeoutException.class)
+				.hasMessage("No Echo available within PT0.05S");
+
+		assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(50));
+		assertThat(pool.stats().timeouts()).isEqualTo(1);
+		assertThat(pool.stats().active()).isEqualTo(1);
+	}
+
+	@Test
+	void portGoesBackWhenTheCallThrows() {
+		var pool = new PortPool<>(Echo.class, 1, Duration.ofMillis(50), this::echo);
+
+		assertThatThrownBy(() -> pool.execute(port -> port.echo(null)))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThat(pool.stats().idle()).isEqualTo(1);
+		assertThat(pool.stats().active()).isZero();
+
+		assertThat(pool.execute(port -> port.echo("again"))).isEqualTo("again");
+	}
+
+	@Test
+	void proxyGivesPortBackWhenTheCallThrows() {
+		var pool = new PortPool<>(Echo.class, 1, Duration.ofMillis(50), this::echo);
+		var proxy = pool.asPort();
+
+		for (var i = 0; i < 3; i++) {
+			assertThatThrownBy(() -> proxy.echo(null))
+					.isInstanceOf(IllegalArgumentException.class)
+					.hasMessage("Nothing to echo");
+		}
+		assertThat(proxy.echo("again")).isEqualTo("again");
+		assertThat(pool.stats()).extracting(PortPool.Stats::idle, PortPool.Stats::borrows, PortPool.Stats::timeouts)
+				.containsExactly(1, 4L, 0L);
+		assertThat(created).hasValue(1);
+	}
+
+	private Echo echo() {
+		created.incrementAndGet();
+		return text -> {
+			if (text == null) {
+				throw new IllegalArgumentException("Nothing to echo");
+			}
+			return text;
+		};
+	}
+
+	interface Echo {
+		String echo(String text);
+	}
+}
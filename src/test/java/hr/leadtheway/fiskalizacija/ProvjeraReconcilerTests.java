@@ -0,0 +1,62 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.FiskalizacijaPortType;
+import hr.leadtheway.wsdl.GreskaType;
+import hr.leadtheway.wsdl.GreskeType;
+import hr.leadtheway.wsdl.ProvjeraOdgovor;
+import hr.leadtheway.wsdl.ProvjeraZahtjev;
+import jakarta.xml.ws.WebServiceException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProvjeraReconcilerTests {
+
+	@Test
+	void reportsOnlyReceiptsCisDoesNotConfirm() throws Exception {
+		var export = new StringBuilder("<Racuni>");
+		for (var brOznRac = 1; brOznRac <= 4; brOznRac++) {
+			export.append(new String(FiskalizacijaJaxb.marshal(TestFixtures.racunZahtjev(brOznRac)), UTF_8).replaceFirst("<\\?xml[^>]*\\?>", ""));
+		}
+		export.append("</Racuni>");
+
+		var report = new StringWriter();
+		var summary = new ProvjeraReconciler(cis(), 2)
+				.reconcile(new ByteArrayInputStream(export.toString().getBytes(UTF_8)), report);
+
+		assertThat(summary).isEqualTo(new ProvjeraReconciler.Summary(4, 1, 2, 1));
+		assertThat(report.toString().lines())
+				.first().isEqualTo("BrOznRac;OznPosPr;OznNapUr;ZastKod;status;detail");
+		assertThat(report.toString().lines().skip(1))
+				.containsExactlyInAnyOrder(
+						"2;POS1;1;e4d909c290d0fb1ca068ffaddf22cbd0;ERRORS;v100",
+						"3;POS1;1;e4d909c290d0fb1ca068ffaddf22cbd0;DIFFERENT;IznosUkupno",
+						"4;POS1;1;e4d909c290d0fb1ca068ffaddf22cbd0;FAILED;jakarta.xml.ws.WebServiceException: timeout"
+				);
+	}
+
+	/**
+	 * Confirms receipt 1, does not know 2, knows 3 with another amount and times out on 4.
+	 */
+	private static FiskalizacijaPortType cis() {
+		return (FiskalizacijaPortType) Proxy.newProxyInstance(ProvjeraReconcilerTests.class.getClassLoader(), new Class<?>[]{FiskalizacijaPortType.class},
+				(self, method, args) -> {
+					var racun = ((ProvjeraZahtjev) args[0]).getRacun();
+					var odgovor = ProvjeraOdgovor.builder().racun(racun);
+					return switch (racun.getBrRac().getBrOznRac()) {
+						case "1" -> odgovor.build();
+						case "2" -> odgovor.greske(GreskeType.builder()
+								.greska(List.of(GreskaType.builder().sifraGreske("v100").porukaGreske("Racun ne postoji.").build()))
+								.build()).build();
+						case "3" -> odgovor.racun(racun.toBuilder().iznosUkupno("1.00").build()).build();
+						default -> throw new WebServiceException("timeout");
+					};
+				});
+	}
+}
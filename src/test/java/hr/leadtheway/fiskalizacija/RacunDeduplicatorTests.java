@@ -0,0 +1,138 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.FiskalizacijaPortType;
+import hr.leadtheway.wsdl.RacunOdgovor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RacunDeduplicatorTests {
+
+	private static final String JIR = "8f1c2a3b-4d5e-4f60-8a7b-9c0d1e2f3a4b";
+
+	@TempDir
+	Path dir;
+
+	private final AtomicInteger sent = new AtomicInteger();
+	private final CountDownLatch release = new CountDownLatch(1);
+	private volatile Error failure;
+
+	@Test
+	void concurrentRetriesShareOneCall() throws Exception {
+		try (var index = JirIndex.open(dir.resolve("jir.log"), false, 100)) {
+			var deduplicator = new RacunDeduplicator(router(), index);
+
+			var results = new ArrayList<Future<RacunDeduplicator.Result>>();
+			try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+				for (var i = 0; i < 8; i++) {
+					results.add(executor.submit(() -> deduplicator.racuni(TestFixtures.racunZahtjev(1))));
+				}
+				while (deduplicator.stats().coalesced() + deduplicator.stats().misses() < 8) {
+					Thread.sleep(1);
+				}
+				release.countDown();
+			}
+
+			for (var result : results) {
+				assertThat(result.get().jir()).isEqualTo(JIR);
+			}
+			assertThat(sent).hasValue(1);
+			assertThat(deduplicator.stats()).isEqualTo(new RacunDeduplicator.Stats(0, 7, 1));
+		}
+	}
+
+	@Test
+	void waitingRetryGetsErrorOfFirstCall() throws Exception {
+		failure = new AssertionError("port failed");
+		try (var index = JirIndex.open(dir.resolve("jir.log"), false, 100)) {
+			var deduplicator = new RacunDeduplicator(router(), index);
+
+			try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+				var first = executor.submit(() -> deduplicator.racuni(TestFixtures.racunZahtjev(1)));
+				while (sent.get() < 1) {
+					Thread.sleep(1);
+				}
+				var retry = executor.submit(() -> deduplicator.racuni(TestFixtures.racunZahtjev(1)));
+				while (deduplicator.stats().coalesced() < 1) {
+					Thread.sleep(1);
+				}
+				release.countDown();
+
+				assertThatThrownBy(first::get).hasCauseInstanceOf(AssertionError.class);
+				assertThatThrownBy(() -> retry.get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(AssertionError.class);
+			}
+
+			failure = null;
+			assertThat(deduplicator.racuni(TestFixtures.racunZahtjev(1)).jir()).isEqualTo(JIR);
+			assertThat(sent).hasValue(2);
+		}
+	}
+
+	@Test
+	void retryAfterRestartGetsIndexedJir() throws Exception {
+		release.countDown();
+		var file = dir.resolve("jir.log");
+		try (var index = JirIndex.open(file, false, 100)) {
+			assertThat(new RacunDeduplicator(router(), index).racuni(TestFixtures.racunZahtjev(1)).cached()).isFalse();
+		}
+
+		try (var index = JirIndex.open(file, false, 100)) {
+			var result = new RacunDeduplicator(router(), index).racuni(TestFixtures.racunZahtjev(1));
+
+			assertThat(result.jir()).isEqualTo(JIR);
+			assertThat(result.cached()).isTrue();
+			assertThat(sent).hasValue(1);
+		}
+	}
+
+	@Test
+	void indexEvictsLeastRecentlyUsed() throws Exception {
+		var file = dir.resolve("jir.log");
+		try (var index = JirIndex.open(file, false, 2)) {
+			var first = JirIndex.Key.of(TestFixtures.racunZahtjev(1).getRacun());
+			var second = new JirIndex.Key("zki-2", "2", "POS1", "1");
+			var third = new JirIndex.Key("zki-3", "3", "POS1", "1");
+
+			index.put(first, "jir-1");
+			index.put(second, "jir-2");
+			index.get(first);
+			index.put(third, "jir-3");
+
+			assertThat(index.get(second)).isNull();
+			assertThat(index.get(first)).isEqualTo("jir-1");
+		}
+
+		try (var index = JirIndex.open(file, false, 2)) {
+			assertThat(index.size()).isEqualTo(2);
+			assertThat(index.get(new JirIndex.Key("zki-3", "3", "POS1", "1"))).isEqualTo("jir-3");
+		}
+	}
+
+	private TenantRouter router() throws Exception {
+		var port = (FiskalizacijaPortType) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{FiskalizacijaPortType.class},
+				(self, method, args) -> {
+					if (!method.getName().equals("racuni")) {
+						throw new UnsupportedOperationException(method.getName());
+					}
+					sent.incrementAndGet();
+					release.await();
+					if (failure != null) {
+						throw failure;
+					}
+					return RacunOdgovor.builder().jir(JIR).build();
+				});
+		return new TenantRouter(port, TestFixtures.signingKeys(), 1000, 100, 100, Duration.ofSeconds(1));
+	}
+}
@@ -0,0 +1,118 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.GreskaType;
+import hr.leadtheway.wsdl.GreskeType;
+import hr.leadtheway.wsdl.RacunOdgovor;
+import hr.leadtheway.wsdl.ZaglavljeOdgovorType;
+import jakarta.xml.ws.WebServiceException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Responses are signed with the test key standing in for CIS.
+ */
+class RacunOdgovorReaderTests {
+
+	private static final String JIR = "8f1c2a3b-4d5e-4f60-8a7b-9c0d1e2f3a4b";
+	private static final QName RACUN_ODGOVOR = new QName(FiskalizacijaJaxb.NAMESPACE, "RacunOdgovor");
+
+	private static StreamingXmlSigner cis;
+	private static X509Certificate cisCertificate;
+
+	@BeforeAll
+	static void setUp() throws Exception {
+		var keys = TestFixtures.signingKeys();
+		cisCertificate = keys.defaultKey().certificate();
+		cis = new StreamingXmlSigner(keys);
+	}
+
+	@Test
+	void readsJirAndVerifiesSignature() throws Exception {
+		var odgovor = new RacunOdgovorReader(cisCertificate).read(source(signed(odgovor(null))));
+
+		assertThat(odgovor.jir()).isEqualTo(JIR);
+		assertThat(odgovor.idPoruke()).isEqualTo("5c6a2a36-3c5f-4a8e-9f5c-6d2b7e1f0a11");
+		assertThat(odgovor.greske()).isEmpty();
+		assertThat(odgovor.signature()).isEqualTo(RacunOdgovorReader.SignatureStatus.VERIFIED);
+		assertThat(odgovor.uspjesno()).isTrue();
+	}
+
+	@Test
+	void readsGreske() throws Exception {
+		var greske = GreskeType.builder()
+				.greska(List.of(
+						GreskaType.builder().sifraGreske("s006").porukaGreske("Sistemska pogreška prilikom obrade zahtjeva.").build(),
+						GreskaType.builder().sifraGreske("s005").porukaGreske("OIB iz poruke zahtjeva nije jednak OIB-u iz certifikata.").build()
+				))
+				.build();
+
+		var odgovor = new RacunOdgovorReader(null).read(source(signed(odgovor(greske))));
+
+		assertThat(odgovor.greske()).extracting(GreskaType::getSifraGreske).containsExactly("s006", "s005");
+		assertThat(odgovor.signature()).isEqualTo(RacunOdgovorReader.SignatureStatus.NOT_VERIFIED);
+		assertThat(odgovor.uspjesno()).isFalse();
+	}
+
+	@Test
+	void rejectsTamperedResponse() throws Exception {
+		var tampered = new String(signed(odgovor(null)), UTF_8).replace(JIR, JIR.replace('8', '9'));
+
+		assertThatThrownBy(() -> new RacunOdgovorReader(cisCertificate).read(source(tampered.getBytes(UTF_8))))
+				.isInstanceOf(WebServiceException.class);
+	}
+
+	@Test
+	void rejectsUnsignedResponse() {
+		var unsigned = FiskalizacijaJaxb.marshal(odgovor(null));
+
+		assertThatThrownBy(() -> new RacunOdgovorReader(cisCertificate).read(source(unsigned)))
+				.isInstanceOf(WebServiceException.class)
+				.hasMessageContaining("no signature");
+	}
+
+	@Test
+	void rejectsSignatureOverInnerElementOnly() throws Exception {
+		// a genuine signed response wrapped into an unsigned one with a Jir of its own
+		var inner = new String(signed(odgovor(null)), UTF_8).replaceFirst("^<\\?xml[^>]*\\?>", "");
+		var outer = new String(FiskalizacijaJaxb.marshal(odgovor(null).toBuilder().id("Vanjski").jir(JIR.replace('8', '9')).build()), UTF_8);
+		var end = outer.lastIndexOf("</");
+		var wrapped = outer.substring(0, end) + inner + outer.substring(end);
+
+		assertThatThrownBy(() -> new RacunOdgovorReader(cisCertificate).read(source(wrapped.getBytes(UTF_8))))
+				.isInstanceOf(WebServiceException.class)
+				.hasMessageContaining("no signature");
+	}
+
+	private static RacunOdgovor odgovor(GreskeType greske) {
+		return RacunOdgovor.builder()
+				.id("RacunOdgovor")
+				.zaglavlje(ZaglavljeOdgovorType.builder()
+						.idPoruke("5c6a2a36-3c5f-4a8e-9f5c-6d2b7e1f0a11")
+						.datumVrijeme("01.06.2025T12:30:21")
+						.build())
+				.jir(greske == null ? JIR : null)
+				.greske(greske)
+				.build();
+	}
+
+	private static byte[] signed(RacunOdgovor odgovor) throws Exception {
+		var out = new ByteArrayOutputStream();
+		cis.sign(null, odgovor, RACUN_ODGOVOR, out);
+		return out.toByteArray();
+	}
+
+	private static StreamSource source(byte[] xml) {
+		return new StreamSource(new ByteArrayInputStream(xml));
+	}
+}
@@ -0,0 +1,107 @@
+package hr.leadtheway.fiskalizacija;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SigningKeysTests {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void findsKeyByOibFromCertificateSubject() throws Exception {
+		var keys = TestFixtures.signingKeys();
+
+		assertThat(keys.oibs()).containsExactly(TestFixtures.OIB);
+		assertThat(keys.forOib(TestFixtures.OIB).alias()).isEqualTo(TestFixtures.KEY_ALIAS);
+		assertThat(keys.forOib(TestFixtures.OIB).privateKey()).isEqualTo(TestFixtures.signingKey().getPrivateKey());
+	}
+
+	@Test
+	void findsKeyByOibFromFinaOrganizationIdentifier() throws Exception {
+		var keys = TestFixtures.multiTenantSigningKeys();
+
+		assertThat(keys.oibs()).containsExactlyInAnyOrder(TestFixtures.OIB, TestFixtures.OTHER_OIB);
+		assertThat(keys.forOib(TestFixtures.OTHER_OIB).alias()).isEqualTo(TestFixtures.OTHER_KEY_ALIAS);
+		assertThat(keys.forOib(TestFixtures.OIB).alias()).isEqualTo(TestFixtures.KEY_ALIAS);
+	}
+
+	@Test
+	void readsOibFromEveryFinaSubjectForm() {
+		assertThat(SigningKeys.oib(new X500Principal(
+				"CN=FISKAL 1, L=ZAGREB, O=TVRTKA D.O.O., OID.2.5.4.97=VATHR-98765432106, C=HR"))).isEqualTo("98765432106");
+		assertThat(SigningKeys.oib(new X500Principal(
+				"CN=FISKAL 1, O=TEST D.O.O., OID.2.5.4.97=HR12345678901, C=HR"))).isEqualTo("12345678901");
+		assertThat(SigningKeys.oib(new X500Principal(
+				"CN=FISKAL 2, SERIALNUMBER=OIB:11111111119, O=OBRT, C=HR"))).isEqualTo("11111111119");
+		assertThat(SigningKeys.oib(new X500Principal(
+				"CN=IVAN HORVAT, SERIALNUMBER=PNOHR-22222222228, C=HR"))).isEqualTo("22222222228");
+		assertThat(SigningKeys.oib(new X500Principal(
+				"CN=FISKAL 1, OID.2.5.4.97=VATHR-123456789012, C=HR"))).isNull();
+	}
+
+	@Test
+	void defaultAliasIsOnlyUsedWithoutOib() throws Exception {
+		var keys = TestFixtures.signingKeys();
+		assertThat(keys.forOib(null).alias()).isEqualTo(TestFixtures.KEY_ALIAS);
+		assertThatThrownBy(() -> keys.forOib(TestFixtures.OTHER_OIB))
+				.isInstanceOf(IllegalStateException.class)
+				.hasMessage("No signing key for OIB " + TestFixtures.OTHER_OIB);
+
+		var withoutDefault = new SigningKeys(new FileSystemResource(copyKeystore("keystore.p12")),
+				TestFixtures.KEYSTORE_PASSWORD, TestFixtures.KEYSTORE_PASSWORD, null);
+		assertThatThrownBy(() -> withoutDefault.forOib(null))
+				.isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	void reloadsReplacedKeystore() throws Exception {
+		var keystore = copyKeystore("keystore.p12");
+		try (var keys = new SigningKeys(new FileSystemResource(keystore),
+				TestFixtures.KEYSTORE_PASSWORD, TestFixtures.KEYSTORE_PASSWORD, TestFixtures.KEY_ALIAS)) {
+			var before = keys.forOib(TestFixtures.OIB);
+			var reloaded = new CountDownLatch(1);
+			keys.addReloadListener(reloaded::countDown);
+			keys.watch();
+
+			Files.move(copyKeystore("renewed.p12"), keystore, REPLACE_EXISTING, ATOMIC_MOVE);
+
+			assertThat(reloaded.await(30, TimeUnit.SECONDS)).isTrue();
+			assertThat(keys.forOib(TestFixtures.OIB)).isNotSameAs(before).isEqualTo(before);
+		}
+	}
+
+	@Test
+	void keepsKeysWhenReloadFails() throws Exception {
+		var keystore = copyKeystore("keystore.p12");
+		var keys = new SigningKeys(new FileSystemResource(keystore),
+				TestFixtures.KEYSTORE_PASSWORD, TestFixtures.KEYSTORE_PASSWORD, TestFixtures.KEY_ALIAS);
+		var before = keys.forOib(TestFixtures.OIB);
+
+		Files.write(keystore, new byte[]{1, 2, 3});
+
+		assertThatThrownBy(keys::reload).isInstanceOf(IOException.class);
+		assertThat(keys.forOib(TestFixtures.OIB)).isSameAs(before);
+	}
+
+	private Path copyKeystore(String name) throws IOException {
+		var target = tempDir.resolve(name);
+		try (var in = TestFixtures.class.getResourceAsStream(TestFixtures.KEYSTORE_RESOURCE)) {
+			Files.copy(in, target, REPLACE_EXISTING);
+		}
+		return target;
+	}
+}
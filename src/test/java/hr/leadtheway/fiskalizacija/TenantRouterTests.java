@@ -0,0 +1,132 @@
+package hr.leadtheway.fiskalizacija;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The calls never reach a port, only the limits in front of it are exercised.
+ */
+class TenantRouterTests {
+
+	@Test
+	void burstOfOneTenantDoesNotLimitAnother() throws Exception {
+		var router = new TenantRouter(null, TestFixtures.multiTenantSigningKeys(), 1, 2, 4, Duration.ZERO);
+		var noisy = router.tenant(TestFixtures.OIB);
+
+		assertThat(noisy.call(() -> "1")).isEqualTo("1");
+		assertThat(noisy.call(() -> "2")).isEqualTo("2");
+		assertThatThrownBy(() -> noisy.call(() -> "3")).isInstanceOf(IllegalStateException.class);
+
+		assertThat(router.tenant(TestFixtures.OTHER_OIB).call(() -> "other")).isEqualTo("other");
+		assertThat(router.stats()).isEqualTo(new TenantRouter.Stats(2, 1, 0));
+	}
+
+	@Test
+	void waitsForTokenWithinMaxWait() throws Exception {
+		var router = new TenantRouter(null, TestFixtures.signingKeys(), 20, 1, 4, Duration.ofSeconds(1));
+		var tenant = router.tenant(TestFixtures.OIB);
+
+		var start = System.nanoTime();
+		tenant.call(() -> null);
+		tenant.call(() -> null);
+
+		assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(40));
+		assertThat(router.stats().rateLimited()).isZero();
+	}
+
+	@Test
+	void waitsForWholeTokenWaitDespiteEarlyWakeUps() throws Exception {
+		var router = new TenantRouter(null, TestFixtures.signingKeys(), 10, 1, 4, Duration.ofSeconds(1));
+		var tenant = router.tenant(TestFixtures.OIB);
+		var caller = Thread.currentThread();
+		var waker = Thread.ofPlatform().daemon().start(() -> {
+			while (!Thread.currentThread().isInterrupted()) {
+				LockSupport.unpark(caller);
+				LockSupport.parkNanos(Duration.ofMillis(5).toNanos());
+			}
+		});
+
+		try {
+			var start = System.nanoTime();
+			tenant.call(() -> null);
+			tenant.call(() -> null);
+
+			assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(100));
+		} finally {
+			waker.interrupt();
+		}
+	}
+
+	@Test
+	void bulkheadLimitsRequestsInFlight() throws Exception {
+		var router = new TenantRouter(null, TestFixtures.signingKeys(), 1000, 10, 1, Duration.ZERO);
+		var tenant = router.tenant(TestFixtures.OIB);
+
+		assertThatThrownBy(() -> tenant.call(() -> tenant.call(() -> "nested")))
+				.isInstanceOf(IllegalStateException.class);
+		assertThat(router.stats().bulkheadFull()).isEqualTo(1);
+		assertThat(tenant.call(() -> "after")).isEqualTo("after");
+	}
+
+	@Test
+	void rejectsOibWithoutSigningKey() throws Exception {
+		// the default alias does not stand in for an OIB without a key
+		var router = new TenantRouter(null, TestFixtures.signingKeys(), 1, 1, 1, Duration.ZERO);
+
+		for (var i = 0; i < 100; i++) {
+			var oib = String.format("%011d", i);
+			assertThatThrownBy(() -> router.tenant(oib)).isInstanceOf(IllegalStateException.class);
+		}
+		assertThatThrownBy(() -> router.tenant(null)).isInstanceOf(IllegalArgumentException.class);
+		assertThat(router.tenant(TestFixtures.OIB).signingKey().oib()).isEqualTo(TestFixtures.OIB);
+		assertThat(router.stats().tenants()).isEqualTo(1);
+	}
+
+	@Test
+	void keyRemovedWhileAddingTenantKeepsNoTenant(@TempDir Path dir) throws Exception {
+		var keystore = dir.resolve("keystore.p12");
+		copy(TestFixtures.MULTI_TENANT_KEYSTORE_RESOURCE, keystore);
+		var reloaded = new AtomicBoolean();
+		// the renewed keystore without the other business' key lands right after its key was looked up
+		var signingKeys = new SigningKeys(new FileSystemResource(keystore), TestFixtures.KEYSTORE_PASSWORD,
+				TestFixtures.KEYSTORE_PASSWORD, TestFixtures.KEY_ALIAS) {
+			@Override
+			public SigningKey forOib(String oib) {
+				var key = super.forOib(oib);
+				if (TestFixtures.OTHER_OIB.equals(oib) && reloaded.compareAndSet(false, true)) {
+					try {
+						copy(TestFixtures.KEYSTORE_RESOURCE, keystore);
+						reload();
+					} catch (Exception ex) {
+						throw new IllegalStateException(ex);
+					}
+				}
+				return key;
+			}
+		};
+		var router = new TenantRouter(null, signingKeys, 1, 1, 1, Duration.ZERO);
+
+		assertThatThrownBy(() -> router.tenant(TestFixtures.OTHER_OIB)).isInstanceOf(IllegalStateException.class);
+		assertThat(reloaded).isTrue();
+		assertThat(router.stats().tenants()).isZero();
+		assertThatThrownBy(() -> router.tenant(TestFixtures.OTHER_OIB)).isInstanceOf(IllegalStateException.class);
+	}
+
+	private static void copy(String resource, Path target) throws IOException {
+		try (var in = TestFixtures.class.getResourceAsStream(resource)) {
+			Files.copy(in, target, REPLACE_EXISTING);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.fiskalizacija.PdfReceiptGenerator.InvoiceItem;
+import hr.leadtheway.wsdl.BrojRacunaType;
+import hr.leadtheway.wsdl.NacinPlacanjaType;
+import hr.leadtheway.wsdl.OznakaSlijednostiType;
+import hr.leadtheway.wsdl.PdvType;
+import hr.leadtheway.wsdl.PorezType;
+import hr.leadtheway.wsdl.RacunType;
+import hr.leadtheway.wsdl.RacunZahtjev;
+import hr.leadtheway.wsdl.ZaglavljeType;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.security.KeyStore;
+import java.security.KeyStore.PasswordProtection;
+import java.security.KeyStore.PrivateKeyEntry;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared by the tests and the JMH benchmarks. The keystore holds a self-signed certificate
+ * for OIB 12345678901, the multi-tenant one also a FINA-style certificate for 98765432106.
+ */
+public final class TestFixtures {
+
+    public static final String KEYSTORE_RESOURCE = "/test-keystore.p12";
+    public static final char[] KEYSTORE_PASSWORD = "changeit".toCharArray();
+    public static final String KEY_ALIAS = "fiskal";
+    public static final String OIB = "12345678901";
+    public static final String MULTI_TENANT_KEYSTORE_RESOURCE = "/multi-tenant-keystore.p12";
+    public static final String OTHER_KEY_ALIAS = "fina";
+    public static final String OTHER_OIB = "98765432106";
+
+    private TestFixtures() {
+    }
+
+    public static PrivateKeyEntry signingKey() throws Exception {
+        var ks = KeyStore.getInstance("PKCS12");
+        try (var in = TestFixtures.class.getResourceAsStream(KEYSTORE_RESOURCE)) {
+            ks.load(in, KEYSTORE_PASSWORD);
+        }
+        return (PrivateKeyEntry) ks.getEntry(KEY_ALIAS, new PasswordProtection(KEYSTORE_PASSWORD));
+    }
+
+    public static SigningKeys signingKeys() throws Exception {
+        return new SigningKeys(new ClassPathResource(KEYSTORE_RESOURCE), KEYSTORE_PASSWORD, KEYSTORE_PASSWORD, KEY_ALIAS);
+    }
+
+    public static SigningKeys multiTenantSigningKeys() throws Exception {
+        return new SigningKeys(new ClassPathResource(MULTI_TENANT_KEYSTORE_RESOURCE), KEYSTORE_PASSWORD, KEYSTORE_PASSWORD, KEY_ALIAS);
+    }
+
+    public static BrojRacunaType brojRacuna(long brOznRac) {
+        return BrojRacunaType.builder()
+                .brOznRac(Long.toString(brOznRac))
+                .oznPosPr("POS1")
+                .oznNapUr("1")
+                .build();
+    }
+
+    public static RacunZahtjev racunZahtjev(long brOznRac) {
+        return RacunZahtjev.builder()
+                .id("RacunZahtjev")
+                .zaglavlje(ZaglavljeType.builder()
+                        .idPoruke("5c6a2a36-3c5f-4a8e-9f5c-6d2b7e1f0a11")
+                        .datumVrijeme("01.06.2025T12:30:20")
+                        .build())
+                .racun(RacunType.builder()
+                        .oib(OIB)
+                        .uSustPdv(true)
+                        .datVrijeme("01.06.2025T12:30:15")
+                        .oznSlijed(OznakaSlijednostiType.P)
+                        .brRac(brojRacuna(brOznRac))
+                        .pdv(PdvType.builder()
+                                .porez(List.of(
+                                        PorezType.builder().stopa("25.00").osnovica("800.00").iznos("200.00").build(),
+                                        PorezType.builder().stopa("13.00").osnovica("207.58").iznos("26.98").build()
+                                ))
+                                .build())
+                        .iznosUkupno("1234.56")
+                        .nacinPlac(NacinPlacanjaType.K)
+                        .oibOper("98765432106")
+                        .zastKod("e4d909c290d0fb1ca068ffaddf22cbd0")
+                        .nakDost(false)
+                        .build())
+                .build();
+    }
+
+    public static PdfReceiptGenerator pdfReceiptGenerator() throws IOException {
+        return new PdfReceiptGenerator(new ClassPathResource("DejaVuSans.ttf"), new ClassPathResource("DejaVuSans-Bold.ttf"), ObservationRegistry.NOOP);
+    }
+
+    /**
+     * A receipt with {@code itemCount} items, large ones span several pages.
+     */
+    public static Receipt receipt(long brOznRac, int itemCount) {
+        var items = new ArrayList<InvoiceItem>(itemCount);
+        var total = Amount.ZERO;
+        for (var i = 1; i <= itemCount; i++) {
+            var amount = Amount.ofCents(i % 50 * 100L + 99);
+            items.add(new InvoiceItem("Artikl " + i + " – čokolada", i % 3 + 1, amount, null));
+            total = total.plus(amount);
+        }
+
+        return Receipt.builder()
+                .supplierAddressLines(List.of("TEST D.O.O.", "Ilica 1", "10000 Zagreb", "OIB: " + OIB))
+                .brojRacuna(brojRacuna(brOznRac))
+                .datumIVrijeme(LocalDateTime.of(2025, 6, 1, 12, 30, 15))
+                .nacinPlacanja(NacinPlacanjaType.K)
+                .items(items)
+                .iznosUkupno(total)
+                .legalNotice("Oslobođeno PDV-a temeljem čl. 90. st. 1. Zakona o PDV-u")
+                .jir("8f1c2a3b-4d5e-4f60-8a7b-9c0d1e2f3a4b")
+                .zki("e4d909c290d0fb1ca068ffaddf22cbd0")
+                .operatorCode("OP1")
+                .build();
+    }
+}
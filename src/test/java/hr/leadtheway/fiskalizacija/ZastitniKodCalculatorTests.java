@@ -0,0 +1,79 @@
+package hr.leadtheway.fiskalizacija;
+
+import hr.leadtheway.wsdl.BrojRacunaType;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ZastitniKodCalculatorTests {
+
+	private static PrivateKey privateKey;
+	private static PrivateKey otherPrivateKey;
+
+	private final ZastitniKodCalculator calculator = new ZastitniKodCalculator(ObservationRegistry.NOOP);
+
+	private final BrojRacunaType brRac = BrojRacunaType.builder()
+			.brOznRac("1234")
+			.oznPosPr("POS1")
+			.oznNapUr("1")
+			.build();
+
+	@BeforeAll
+	static void generateKeys() throws Exception {
+		var generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		privateKey = generator.generateKeyPair().getPrivate();
+		otherPrivateKey = generator.generateKeyPair().getPrivate();
+	}
+
+	@Test
+	void matchesStaticCalculation() {
+		var datum = LocalDateTime.of(2025, 6, 1, 12, 30, 15);
+
+		for (var key : new PrivateKey[]{privateKey, otherPrivateKey, privateKey}) {
+			assertThat(calculator.calculate("12345678901", datum, brRac, "1234.56", key))
+					.isEqualTo(ZastitniKodIzracunUtils.calculate("12345678901", datum, brRac, "1234.56", key))
+					.matches("[a-f0-9]{32}");
+		}
+	}
+
+	@Test
+	void amountGivesSameCodeAsItsText() {
+		var datum = LocalDateTime.of(2025, 6, 1, 12, 30, 15);
+
+		assertThat(calculator.calculate("12345678901", datum, brRac, Amount.parse("1234.5"), privateKey))
+				.isEqualTo(calculator.calculate("12345678901", datum, brRac, "1234.50", privateKey));
+	}
+
+	@Test
+	void propagatesSigningErrors() {
+		var datum = LocalDateTime.of(2025, 6, 1, 12, 30, 15);
+		var ecKey = new PrivateKey() {
+			@Override
+			public String getAlgorithm() {
+				return "EC";
+			}
+
+			@Override
+			public String getFormat() {
+				return null;
+			}
+
+			@Override
+			public byte[] getEncoded() {
+				return null;
+			}
+		};
+
+		assertThatThrownBy(() -> calculator.calculate("12345678901", datum, brRac, "1234.56", ecKey))
+				.isInstanceOf(IllegalStateException.class)
+				.hasMessage("ZKI calculation failed");
+	}
+}